@@ -2,23 +2,47 @@ package nosql.workshop;
 
 import net.codestory.http.WebServer;
 import net.codestory.http.injection.GuiceAdapter;
+import nosql.workshop.filters.BulkheadFilter;
+import nosql.workshop.filters.DeadlineFilter;
+import nosql.workshop.filters.StaticAssetsFilter;
+import nosql.workshop.resources.MetricsResource;
+import nosql.workshop.resources.ReadinessResource;
 import nosql.workshop.resources.TownRessource;
 import nosql.workshop.resources.InstallationResource;
+import nosql.workshop.services.WarmUp;
 
 /**
  * Point d'entrée de l'application. Permet de démarrer le serveur web afin d'exposer l'API et les pages HTML.
  */
 public class Application {
 
+    public static final int DEFAULT_HTTP_PORT = 8080;
+
     public static void main(String[] args) {
+        GuiceAdapter iocAdapter = new GuiceAdapter(new ApplicationModule());
         WebServer webServer = new WebServer();
         webServer.configure(routes -> {
-                    routes.setIocAdapter(new GuiceAdapter(new ApplicationModule()));
+                    routes.setIocAdapter(iocAdapter);
+                    routes.filter(StaticAssetsFilter.class);
+                    routes.filter(DeadlineFilter.class);
+                    routes.filter(BulkheadFilter.class);
                     routes.add("/api/installations", InstallationResource.class);
                     routes.add("/api/towns", TownRessource.class);
+                    routes.add("/api/metrics", MetricsResource.class);
+                    routes.add(ReadinessResource.class);
                 }
         );
-        webServer.start();
+        webServer.start(httpPort());
+
+        // vérification des index et mise en température en tâche de fond (cf. /ready)
+        iocAdapter.get(WarmUp.class).start();
+    }
+
+    /**
+     * Port HTTP de l'application (propriété système <code>http.port</code>, 8080 par défaut).
+     */
+    public static int httpPort() {
+        return Integer.getInteger(WarmUp.HTTP_PORT, DEFAULT_HTTP_PORT);
     }
 
 }
@@ -1,10 +1,21 @@
 package nosql.workshop;
 
 import com.google.inject.AbstractModule;
+import com.google.inject.Singleton;
 import com.google.inject.name.Names;
+import nosql.workshop.filters.DeadlineFilter;
+import nosql.workshop.services.Bulkheads;
 import nosql.workshop.services.InstallationService;
 import nosql.workshop.services.MongoDB;
+import nosql.workshop.services.MongoInstallationService;
+import nosql.workshop.services.MongoStatsCubeService;
 import nosql.workshop.services.SearchService;
+import nosql.workshop.services.SlowQueryLog;
+import nosql.workshop.services.SnapshotInstallationService;
+import nosql.workshop.services.SnapshotStatsCubeService;
+import nosql.workshop.services.StatsCubeService;
+import nosql.workshop.services.TextSearchService;
+import nosql.workshop.services.WarmUp;
 import static nosql.workshop.services.SearchService.*;
 
 
@@ -15,10 +26,30 @@ public class ApplicationModule extends AbstractModule {
 
     @Override
     protected void configure() {
-        bind(MongoDB.class);
-        bind(InstallationService.class);
-        bind(SearchService.class);
+        // instance unique : un seul client MongoDB (et son pool de connexions) pour toute l'application
+        bind(MongoDB.class).in(Singleton.class);
+        String snapshotFile = System.getProperty(SnapshotInstallationService.SNAPSHOT_FILE);
+        if (snapshotFile != null) {
+            // mode snapshot : les installations et les statistiques sont servies en lecture seule depuis le fichier, sans MongoDB
+            bindConstant().annotatedWith(Names.named(SnapshotInstallationService.SNAPSHOT_FILE)).to(snapshotFile);
+            bind(InstallationService.class).to(SnapshotInstallationService.class).in(Singleton.class);
+            bind(StatsCubeService.class).to(SnapshotStatsCubeService.class).in(Singleton.class);
+        } else {
+            // instance unique, partagée par les ressources, le routeur de recherche et la mise en température
+            bind(MongoInstallationService.class).in(Singleton.class);
+            bind(InstallationService.class).to(MongoInstallationService.class);
+            bind(TextSearchService.class).to(MongoInstallationService.class);
+            bind(StatsCubeService.class).to(MongoStatsCubeService.class).in(Singleton.class);
+        }
+        // instance unique : le regroupement des requêtes doit être partagé par toutes les ressources
+        bind(SearchService.class).in(Singleton.class);
         bindConstant().annotatedWith(Names.named(ES_HOST)).to("localhost");
         bindConstant().annotatedWith(Names.named(ES_TRANSPORT_PORT)).to(9300);
+        bindConstant().annotatedWith(Names.named(Bulkheads.MONGO_MAX_CONCURRENT)).to(20);
+        bindConstant().annotatedWith(Names.named(Bulkheads.ES_MAX_CONCURRENT)).to(10);
+        bindConstant().annotatedWith(Names.named(DeadlineFilter.DEFAULT_BUDGET_MS)).to(Long.getLong(DeadlineFilter.DEFAULT_BUDGET_MS, 5000L));
+        bindConstant().annotatedWith(Names.named(SlowQueryLog.THRESHOLD_MS)).to(Long.getLong(SlowQueryLog.THRESHOLD_MS, 200L));
+        bindConstant().annotatedWith(Names.named(WarmUp.HTTP_PORT)).to(Application.httpPort());
+        bindConstant().annotatedWith(Names.named(WarmUp.WARM_UP_ENABLED)).to(!"false".equals(System.getProperty(WarmUp.WARM_UP_ENABLED)));
     }
 }
@@ -0,0 +1,35 @@
+package nosql.workshop.filters;
+
+import net.codestory.http.Context;
+import net.codestory.http.filters.Filter;
+import net.codestory.http.filters.PayloadSupplier;
+import net.codestory.http.payload.Payload;
+import nosql.workshop.services.Bulkheads;
+import nosql.workshop.services.BulkheadFullException;
+
+/**
+ * Filtre traduisant le refus d'un appel par une cloison MongoDB / Elasticsearch (cf. {@link Bulkheads}).
+ * Un appel refusé reçoit immédiatement une erreur 503 avec un en-tête <code>Retry-After</code>.
+ * <p>
+ * Les places sont prises par les services au moment de l'appel au backend : un appel de l'API servi en mémoire
+ * n'est jamais refusé.
+ */
+public class BulkheadFilter implements Filter {
+
+    public static final String RETRY_AFTER_SECONDS = "1";
+
+    @Override
+    public boolean matches(String uri, Context context) {
+        return uri.startsWith("/api/");
+    }
+
+    @Override
+    public Payload apply(String uri, Context context, PayloadSupplier nextFilter) throws Exception {
+        try {
+            return nextFilter.get();
+        } catch (BulkheadFullException e) {
+            return new Payload("text/plain", "Service temporairement surchargé", 503)
+                    .withHeader("Retry-After", RETRY_AFTER_SECONDS);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package nosql.workshop.filters;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.mongodb.MongoExecutionTimeoutException;
+import net.codestory.http.Context;
+import net.codestory.http.filters.Filter;
+import net.codestory.http.filters.PayloadSupplier;
+import net.codestory.http.payload.Payload;
+import nosql.workshop.services.Deadline;
+import nosql.workshop.services.DeadlineExceededException;
+import org.elasticsearch.ElasticsearchTimeoutException;
+
+/**
+ * Filtre attribuant une échéance à chaque appel de l'API (cf. {@link Deadline}).
+ * <p>
+ * Le client peut réduire ce délai avec l'en-tête <code>X-Request-Timeout</code> (en millisecondes).
+ * Un appel dont l'échéance est dépassée reçoit une erreur 504.
+ */
+public class DeadlineFilter implements Filter {
+
+    public static final String DEFAULT_BUDGET_MS = "request.deadline.ms";
+    public static final String TIMEOUT_HEADER = "X-Request-Timeout";
+
+    private final long defaultBudgetMillis;
+
+    @Inject
+    public DeadlineFilter(@Named(DEFAULT_BUDGET_MS) long defaultBudgetMillis) {
+        this.defaultBudgetMillis = defaultBudgetMillis;
+    }
+
+    @Override
+    public boolean matches(String uri, Context context) {
+        return uri.startsWith("/api/");
+    }
+
+    @Override
+    public Payload apply(String uri, Context context, PayloadSupplier nextFilter) throws Exception {
+        Deadline.start(budgetMillis(context.header(TIMEOUT_HEADER)));
+        try {
+            return nextFilter.get();
+        } catch (DeadlineExceededException | MongoExecutionTimeoutException | ElasticsearchTimeoutException e) {
+            return new Payload("text/plain", "Délai de traitement dépassé", 504);
+        } finally {
+            Deadline.clear();
+        }
+    }
+
+    private long budgetMillis(String timeoutHeader) {
+        if (timeoutHeader != null) {
+            try {
+                long requested = Long.parseLong(timeoutHeader.trim());
+                if (requested > 0) {
+                    return Math.min(requested, defaultBudgetMillis);
+                }
+            } catch (NumberFormatException e) {
+                // en-tête invalide : délai par défaut
+            }
+        }
+        return defaultBudgetMillis;
+    }
+}
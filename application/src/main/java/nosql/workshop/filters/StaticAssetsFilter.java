@@ -0,0 +1,74 @@
+package nosql.workshop.filters;
+
+import net.codestory.http.Context;
+import net.codestory.http.filters.Filter;
+import net.codestory.http.filters.PayloadSupplier;
+import net.codestory.http.payload.Payload;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Filtre servant les ressources front-end produites au build (répertoire <code>assets/dist</code>).
+ * <p>
+ * Le nom de ces fichiers porte l'empreinte de leur contenu : ils peuvent être mis en cache sans limite par le
+ * navigateur. La version précompressée (<code>.gz</code>) est servie lorsque le client accepte gzip.
+ */
+public class StaticAssetsFilter implements Filter {
+
+    public static final String DIST_URI = "/assets/dist/";
+    public static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    private static final String APP_ROOT = "/app";
+
+    @Override
+    public boolean matches(String uri, Context context) {
+        return uri.startsWith(DIST_URI) && !uri.contains("..");
+    }
+
+    @Override
+    public Payload apply(String uri, Context context, PayloadSupplier nextFilter) throws Exception {
+        String acceptEncoding = context.header("Accept-Encoding");
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+
+        byte[] content = gzip ? read(uri + ".gz") : null;
+        if (content == null) {
+            content = read(uri);
+            gzip = false;
+        }
+        if (content == null) {
+            return nextFilter.get();
+        }
+
+        Payload payload = new Payload(contentType(uri), content)
+                .withHeader("Cache-Control", CACHE_CONTROL)
+                .withHeader("Vary", "Accept-Encoding");
+        return gzip ? payload.withHeader("Content-Encoding", "gzip") : payload;
+    }
+
+    private static String contentType(String uri) {
+        if (uri.endsWith(".css")) {
+            return "text/css;charset=UTF-8";
+        }
+        if (uri.endsWith(".js")) {
+            return "application/javascript;charset=UTF-8";
+        }
+        return "application/octet-stream";
+    }
+
+    private static byte[] read(String uri) throws IOException {
+        try (InputStream is = StaticAssetsFilter.class.getResourceAsStream(APP_ROOT + uri)) {
+            if (is == null) {
+                return null;
+            }
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                content.write(buffer, 0, read);
+            }
+            return content.toByteArray();
+        }
+    }
+}
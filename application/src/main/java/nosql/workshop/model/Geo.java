@@ -0,0 +1,30 @@
+package nosql.workshop.model;
+
+/**
+ * Calculs géographiques partagés par les services.
+ */
+public final class Geo {
+
+    /**
+     * Rayon terrestre (en mètres) utilisé par MongoDB pour ses distances sphériques et pour convertir une distance
+     * en radians : toutes les distances de l'application sont calculées avec ce rayon, afin que MongoDB
+     * et le snapshot retiennent les mêmes installations.
+     */
+    public static final double EARTH_RADIUS_METERS = 6378100;
+
+    private Geo() {
+    }
+
+    /**
+     * Distance orthodromique entre deux points (formule de haversine).
+     *
+     * @return la distance en mètres.
+     */
+    public static double haversine(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.sqrt(a));
+    }
+}
@@ -0,0 +1,221 @@
+package nosql.workshop.model;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Critères de filtrage de la liste des installations. Un critère <code>null</code> n'est pas appliqué.
+ * <p>
+ * Les critères sont combinés (ET). Le critère géographique (<code>lat</code>, <code>lng</code>, <code>distance</code>)
+ * est exprimé par un <code>$geoWithin</code>, compatible avec le comptage, et non par un <code>$near</code>.
+ */
+public class InstallationFilter {
+
+    private String commune;
+    private String famille;
+    private String activite;
+    private Integer minParking;
+    private Boolean multiCommune;
+    private Double lat;
+    private Double lng;
+    private Double distance;
+
+    public String getCommune() {
+        return commune;
+    }
+
+    public void setCommune(String commune) {
+        this.commune = commune;
+    }
+
+    public String getFamille() {
+        return famille;
+    }
+
+    public void setFamille(String famille) {
+        this.famille = famille;
+    }
+
+    public String getActivite() {
+        return activite;
+    }
+
+    public void setActivite(String activite) {
+        this.activite = activite;
+    }
+
+    public Integer getMinParking() {
+        return minParking;
+    }
+
+    public void setMinParking(Integer minParking) {
+        this.minParking = minParking;
+    }
+
+    public Boolean getMultiCommune() {
+        return multiCommune;
+    }
+
+    public void setMultiCommune(Boolean multiCommune) {
+        this.multiCommune = multiCommune;
+    }
+
+    public Double getLat() {
+        return lat;
+    }
+
+    public Double getLng() {
+        return lng;
+    }
+
+    public Double getDistance() {
+        return distance;
+    }
+
+    /**
+     * Restreint le filtre aux installations situées à moins de <code>distance</code> mètres d'un point.
+     */
+    public void setNear(double lat, double lng, double distance) {
+        this.lat = lat;
+        this.lng = lng;
+        this.distance = distance;
+    }
+
+    public boolean isNear() {
+        return lat != null;
+    }
+
+    /**
+     * @return <code>true</code> si aucun critère n'est défini.
+     */
+    public boolean isEmpty() {
+        return commune == null && famille == null && activite == null && minParking == null && multiCommune == null && !isNear();
+    }
+
+    /**
+     * Indique si une installation satisfait les critères non géographiques (implémentations sans MongoDB).
+     */
+    public boolean matches(Installation installation) {
+        return (minParking == null || installation.getNbPlacesParking() >= minParking)
+                && (multiCommune == null || installation.isMultiCommune() == multiCommune)
+                && (commune == null || (installation.getAdresse() != null && commune.equals(installation.getAdresse().getCommune())))
+                && (famille == null && activite == null || matchesEquipement(installation));
+    }
+
+    private boolean matchesEquipement(Installation installation) {
+        if (installation.getEquipements() == null) {
+            return false;
+        }
+        for (Equipement equipement : installation.getEquipements()) {
+            if ((famille == null || famille.equals(equipement.getFamille()))
+                    && (activite == null || (equipement.getActivites() != null && equipement.getActivites().contains(activite)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Requête MongoDB équivalente, au format Jongo : les valeurs sont les paramètres {@link #toMongoParameters()}.
+     * Les critères d'égalité précèdent les critères d'intervalle, comme dans les index composés.
+     */
+    public String toMongoQuery() {
+        List<String> criteria = new ArrayList<>();
+        if (commune != null) {
+            criteria.add("adresse.commune: #");
+        }
+        if (multiCommune != null) {
+            criteria.add("multiCommune: #");
+        }
+        if (famille != null && activite != null) {
+            // famille et activité d'un même équipement
+            criteria.add("equipements: {$elemMatch: {famille: #, activites: #}}");
+        } else if (famille != null) {
+            criteria.add("equipements.famille: #");
+        } else if (activite != null) {
+            criteria.add("equipements.activites: #");
+        }
+        if (minParking != null) {
+            criteria.add("nbPlacesParking: {$gte: #}");
+        }
+        if (isNear()) {
+            criteria.add("location: {$geoWithin: {$centerSphere: [[#, #], #]}}");
+        }
+        return "{" + String.join(", ", criteria) + "}";
+    }
+
+    /**
+     * Paramètres de la requête {@link #toMongoQuery()}, dans l'ordre des critères.
+     */
+    public Object[] toMongoParameters() {
+        List<Object> parameters = new ArrayList<>();
+        if (commune != null) {
+            parameters.add(commune);
+        }
+        if (multiCommune != null) {
+            parameters.add(multiCommune);
+        }
+        if (famille != null) {
+            parameters.add(famille);
+        }
+        if (activite != null) {
+            parameters.add(activite);
+        }
+        if (minParking != null) {
+            parameters.add(minParking);
+        }
+        if (isNear()) {
+            parameters.add(lng);
+            parameters.add(lat);
+            parameters.add(distance / Geo.EARTH_RADIUS_METERS);
+        }
+        return parameters.toArray();
+    }
+
+    /**
+     * Forme du filtre : noms des critères définis (ex : <code>commune+famille</code>), sans leurs valeurs.
+     */
+    public String getShape() {
+        return isEmpty() ? "none" : String.join("+", toParameters().keySet()).replace("lat+lng+distance", "near");
+    }
+
+    /**
+     * Paramètres d'URL correspondant aux critères, préfixés par <code>&amp;</code> (liens de pagination).
+     */
+    public String toQueryString() {
+        StringBuilder params = new StringBuilder();
+        toParameters().forEach((name, value) -> params.append('&').append(name).append('=').append(encode(value)));
+        return params.toString();
+    }
+
+    private Map<String, Object> toParameters() {
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        putIfNotNull(parameters, "commune", commune);
+        putIfNotNull(parameters, "famille", famille);
+        putIfNotNull(parameters, "activite", activite);
+        putIfNotNull(parameters, "minParking", minParking);
+        putIfNotNull(parameters, "multiCommune", multiCommune);
+        putIfNotNull(parameters, "lat", lat);
+        putIfNotNull(parameters, "lng", lng);
+        putIfNotNull(parameters, "distance", distance);
+        return parameters;
+    }
+
+    private static void putIfNotNull(Map<String, Object> parameters, String name, Object value) {
+        if (value != null) {
+            parameters.put(name, value);
+        }
+    }
+
+    private static String encode(Object value) {
+        try {
+            return URLEncoder.encode(value.toString(), "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package nosql.workshop.model;
+
+/**
+ * Résultat de la récupération d'une installation par son numéro, dans une demande portant sur plusieurs numéros.
+ * Les numéros inconnus sont signalés par <code>found</code> à <code>false</code>, sans installation.
+ */
+public class InstallationLookup {
+
+    private String numero;
+    private boolean found;
+    private Installation installation;
+
+    public InstallationLookup(String numero, Installation installation) {
+        this.numero = numero;
+        this.found = installation != null;
+        this.installation = installation;
+    }
+
+    public String getNumero() {
+        return numero;
+    }
+
+    public boolean isFound() {
+        return found;
+    }
+
+    public Installation getInstallation() {
+        return installation;
+    }
+}
@@ -0,0 +1,92 @@
+package nosql.workshop.model;
+
+import org.jongo.marshall.jackson.oid.Id;
+
+/**
+ * Vue allégée d'une installation sportive (nom, commune et position), utilisée par les listes et la carte.
+ */
+public class InstallationSummary {
+
+    /**
+     * Projection MongoDB correspondant aux attributs de la vue.
+     */
+    public static final String MONGO_PROJECTION = "{nom: 1, adresse.commune: 1, location: 1}";
+
+    /**
+     * Attributs à conserver dans la source des documents Elasticsearch.
+     */
+    public static final String[] SOURCE_FIELDS = {"_id", "nom", "adresse.commune", "location"};
+
+    @Id
+    private String numero;
+    private String nom;
+    private Adresse adresse;
+    private Location location;
+
+    public String getNumero() {
+        return numero;
+    }
+
+    public void setNumero(String numero) {
+        this.numero = numero;
+    }
+
+    public String getNom() {
+        return nom;
+    }
+
+    public void setNom(String nom) {
+        this.nom = nom;
+    }
+
+    public Adresse getAdresse() {
+        return adresse;
+    }
+
+    public void setAdresse(Adresse adresse) {
+        this.adresse = adresse;
+    }
+
+    public Location getLocation() {
+        return location;
+    }
+
+    public void setLocation(Location location) {
+        this.location = location;
+    }
+
+    public static class Adresse {
+
+        private String commune;
+
+        public String getCommune() {
+            return commune;
+        }
+
+        public void setCommune(String commune) {
+            this.commune = commune;
+        }
+    }
+
+    public static class Location {
+
+        private String type;
+        private double[] coordinates;
+
+        public String getType() {
+            return type;
+        }
+
+        public void setType(String type) {
+            this.type = type;
+        }
+
+        public double[] getCoordinates() {
+            return coordinates;
+        }
+
+        public void setCoordinates(double[] coordinates) {
+            this.coordinates = coordinates;
+        }
+    }
+}
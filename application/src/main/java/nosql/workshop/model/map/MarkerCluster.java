@@ -0,0 +1,48 @@
+package nosql.workshop.model.map;
+
+/**
+ * Groupe d'installations proches, affiché comme un seul marqueur sur la carte.
+ * Aux niveaux de zoom élevés, chaque marqueur correspond à une seule installation (<code>count</code> = 1).
+ */
+public class MarkerCluster {
+
+    private double latitude;
+    private double longitude;
+    private int count;
+    private String representativeId;
+    private String nom;
+
+    public MarkerCluster(double latitude, double longitude, int count, String representativeId, String nom) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.count = count;
+        this.representativeId = representativeId;
+        this.nom = nom;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Numéro de l'installation la plus proche du centre du groupe.
+     */
+    public String getRepresentativeId() {
+        return representativeId;
+    }
+
+    /**
+     * Nom de l'installation, renseigné uniquement pour un marqueur individuel.
+     */
+    public String getNom() {
+        return nom;
+    }
+}
@@ -0,0 +1,35 @@
+package nosql.workshop.model.metrics;
+
+/**
+ * État de santé d'un backend de recherche, tel que mesuré par le routeur de recherche.
+ */
+public class BackendStats {
+
+    private long calls;
+    private double averageLatencyMs;
+    private double errorRate;
+    private String circuitState;
+
+    public BackendStats(long calls, double averageLatencyMs, double errorRate, String circuitState) {
+        this.calls = calls;
+        this.averageLatencyMs = averageLatencyMs;
+        this.errorRate = errorRate;
+        this.circuitState = circuitState;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    public double getAverageLatencyMs() {
+        return averageLatencyMs;
+    }
+
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    public String getCircuitState() {
+        return circuitState;
+    }
+}
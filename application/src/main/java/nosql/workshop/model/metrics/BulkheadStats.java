@@ -0,0 +1,29 @@
+package nosql.workshop.model.metrics;
+
+/**
+ * État d'une cloison (limite de concurrence) protégeant un backend.
+ */
+public class BulkheadStats {
+
+    private int maxConcurrent;
+    private int inFlight;
+    private long rejected;
+
+    public BulkheadStats(int maxConcurrent, int inFlight, long rejected) {
+        this.maxConcurrent = maxConcurrent;
+        this.inFlight = inFlight;
+        this.rejected = rejected;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+}
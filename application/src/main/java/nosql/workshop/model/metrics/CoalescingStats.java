@@ -0,0 +1,34 @@
+package nosql.workshop.model.metrics;
+
+/**
+ * Statistiques de regroupement des appels identiques simultanés.
+ */
+public class CoalescingStats {
+
+    private long requests;
+    private long backendCalls;
+
+    public CoalescingStats(long requests, long backendCalls) {
+        this.requests = requests;
+        this.backendCalls = backendCalls;
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    public long getBackendCalls() {
+        return backendCalls;
+    }
+
+    public long getCoalesced() {
+        return requests - backendCalls;
+    }
+
+    /**
+     * Proportion des requêtes servies sans appel supplémentaire au backend.
+     */
+    public double getCoalescingRatio() {
+        return requests == 0 ? 0 : (double) getCoalesced() / requests;
+    }
+}
@@ -0,0 +1,51 @@
+package nosql.workshop.model.metrics;
+
+/**
+ * Résultat de la vérification du plan d'exécution MongoDB d'une forme de filtre de la liste des installations.
+ */
+public class IndexCheck {
+
+    private String shape;
+    private String query;
+    private boolean indexed;
+    private String index;
+    private boolean covered;
+
+    public IndexCheck(String shape, String query, boolean indexed, String index, boolean covered) {
+        this.shape = shape;
+        this.query = query;
+        this.indexed = indexed;
+        this.index = index;
+        this.covered = covered;
+    }
+
+    public String getShape() {
+        return shape;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * @return <code>true</code> si le plan retenu parcourt un index, sans parcours complet de la collection.
+     */
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * @return le ou les index utilisés par le plan retenu.
+     */
+    public String getIndex() {
+        return index;
+    }
+
+    /**
+     * @return <code>true</code> si la liste résumée (critères et projection) est servie par l'index seul, sans lire
+     * les documents ; jamais le cas d'un index multiclé (équipements), ni d'une projection hors de l'index.
+     */
+    public boolean isCovered() {
+        return covered;
+    }
+}
@@ -0,0 +1,57 @@
+package nosql.workshop.model.metrics;
+
+/**
+ * Opération MongoDB ou Elasticsearch ayant dépassé le seuil de lenteur.
+ * Le plan d'exécution (<code>explain</code> MongoDB) n'est capturé que pour un échantillon des opérations.
+ */
+public class SlowOperation {
+
+    private long timestamp;
+    private String backend;
+    private String operation;
+    private String parameters;
+    private long durationMs;
+    private String error;
+    private volatile Object plan;
+
+    public SlowOperation(long timestamp, String backend, String operation, String parameters, long durationMs, String error) {
+        this.timestamp = timestamp;
+        this.backend = backend;
+        this.operation = operation;
+        this.parameters = parameters;
+        this.durationMs = durationMs;
+        this.error = error;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getBackend() {
+        return backend;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public String getParameters() {
+        return parameters;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public Object getPlan() {
+        return plan;
+    }
+
+    public void setPlan(Object plan) {
+        this.plan = plan;
+    }
+}
@@ -0,0 +1,23 @@
+package nosql.workshop.model.search;
+
+/**
+ * Nombre d'installations correspondant à une valeur de facette.
+ */
+public class FacetCount {
+
+    private String value;
+    private long count;
+
+    public FacetCount(String value, long count) {
+        this.value = value;
+        this.count = count;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public long getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,34 @@
+package nosql.workshop.model.search;
+
+import nosql.workshop.model.Installation;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Résultat d'une recherche full-text, accompagné des facettes calculées sur l'ensemble des résultats.
+ */
+public class FacetedSearchResult {
+
+    private long totalHits;
+    private List<Installation> installations;
+    private Map<String, List<FacetCount>> facets;
+
+    public FacetedSearchResult(long totalHits, List<Installation> installations, Map<String, List<FacetCount>> facets) {
+        this.totalHits = totalHits;
+        this.installations = installations;
+        this.facets = facets;
+    }
+
+    public long getTotalHits() {
+        return totalHits;
+    }
+
+    public List<Installation> getInstallations() {
+        return installations;
+    }
+
+    public Map<String, List<FacetCount>> getFacets() {
+        return facets;
+    }
+}
@@ -0,0 +1,63 @@
+package nosql.workshop.model.stats;
+
+/**
+ * Cellule du cube de statistiques : comptes pour une combinaison commune x famille x activité.
+ * Une dimension agrégée vaut <code>*</code>.
+ */
+public class CubeCell {
+
+    private String commune;
+    private String famille;
+    private String activite;
+    private long installations;
+    private long equipements;
+    private double averageEquipementsPerInstallation;
+
+    public String getCommune() {
+        return commune;
+    }
+
+    public void setCommune(String commune) {
+        this.commune = commune;
+    }
+
+    public String getFamille() {
+        return famille;
+    }
+
+    public void setFamille(String famille) {
+        this.famille = famille;
+    }
+
+    public String getActivite() {
+        return activite;
+    }
+
+    public void setActivite(String activite) {
+        this.activite = activite;
+    }
+
+    public long getInstallations() {
+        return installations;
+    }
+
+    public void setInstallations(long installations) {
+        this.installations = installations;
+    }
+
+    public long getEquipements() {
+        return equipements;
+    }
+
+    public void setEquipements(long equipements) {
+        this.equipements = equipements;
+    }
+
+    public double getAverageEquipementsPerInstallation() {
+        return averageEquipementsPerInstallation;
+    }
+
+    public void setAverageEquipementsPerInstallation(double averageEquipementsPerInstallation) {
+        this.averageEquipementsPerInstallation = averageEquipementsPerInstallation;
+    }
+}
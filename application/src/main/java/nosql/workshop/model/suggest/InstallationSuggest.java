@@ -0,0 +1,23 @@
+package nosql.workshop.model.suggest;
+
+/**
+ * Suggestion d'installation lors de la saisie : numéro et nom uniquement.
+ */
+public class InstallationSuggest {
+
+    private String numero;
+    private String nom;
+
+    public InstallationSuggest(String numero, String nom) {
+        this.numero = numero;
+        this.nom = nom;
+    }
+
+    public String getNumero() {
+        return numero;
+    }
+
+    public String getNom() {
+        return nom;
+    }
+}
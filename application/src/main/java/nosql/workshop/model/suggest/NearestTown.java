@@ -0,0 +1,29 @@
+package nosql.workshop.model.suggest;
+
+/**
+ * Ville la plus proche d'un point (géocodage inverse), avec sa distance au point en mètres.
+ */
+public class NearestTown {
+
+    private String townName;
+    private Double[] location;
+    private double distance;
+
+    public NearestTown(String townName, Double[] location, double distance) {
+        this.townName = townName;
+        this.location = location;
+        this.distance = distance;
+    }
+
+    public String getTownName() {
+        return townName;
+    }
+
+    public Double[] getLocation() {
+        return location;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+}
@@ -5,13 +5,30 @@ import net.codestory.http.Context;
 import net.codestory.http.Query;
 import net.codestory.http.Response;
 import net.codestory.http.annotations.Get;
+import net.codestory.http.annotations.Post;
+import net.codestory.http.errors.BadRequestException;
+import net.codestory.http.payload.Payload;
 import nosql.workshop.model.Installation;
+import nosql.workshop.model.InstallationFilter;
+import nosql.workshop.model.InstallationLookup;
+import nosql.workshop.model.map.MarkerCluster;
+import nosql.workshop.model.search.FacetedSearchResult;
+import nosql.workshop.model.stats.CubeCell;
 import nosql.workshop.model.stats.InstallationsStats;
+import nosql.workshop.model.suggest.InstallationSuggest;
 import nosql.workshop.services.InstallationService;
+import nosql.workshop.services.MapClusterService;
+import nosql.workshop.services.SearchRouter;
 import nosql.workshop.services.SearchService;
+import nosql.workshop.services.StatsCubeService;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import static net.codestory.http.errors.NotFoundException.notFoundIfNull;
@@ -24,70 +41,266 @@ public class InstallationResource {
     public static final int DEFAULT_PAGE = 1;
     public static final int DEFAULT_PAGE_SIZE = 10;
     public static final int MAX_PAGE_SIZE = 50;
+    public static final String VIEW_SUMMARY = "summary";
+    public static final double DEFAULT_SEARCH_DISTANCE = 5000;
+    public static final int MAX_IDS = 100;
+    public static final String MAP_RETRY_AFTER_SECONDS = "5";
 
     private final InstallationService installationService;
     private final SearchService searchService;
+    private final StatsCubeService statsCubeService;
+    private final SearchRouter searchRouter;
+    private final MapClusterService mapClusterService;
 
     @Inject
-    public InstallationResource(InstallationService installationService, SearchService searchService) {
+    public InstallationResource(InstallationService installationService, SearchService searchService, StatsCubeService statsCubeService,
+                                SearchRouter searchRouter, MapClusterService mapClusterService) {
         this.installationService = installationService;
         this.searchService = searchService;
+        this.statsCubeService = statsCubeService;
+        this.searchRouter = searchRouter;
+        this.mapClusterService = mapClusterService;
     }
 
     @Get("/")
-    public List<Installation> list(Context context) {
-        // Nombre total d'installations
-        long count = installationService.count();
+    public List<?> list(Context context) {
+        // Récupération d'une liste d'installations par numéro : ?ids=numero1,numero2,...
+        String ids = context.query().get("ids");
+        if (ids != null) {
+            return getAll(ids);
+        }
 
         // Gestion des query params
         Query query = context.query();
+        InstallationFilter filter = parseFilter(query);
+
+        // Nombre total d'installations
+        long count = filter.isEmpty() ? installationService.count() : installationService.count(filter);
+
         int pageQuery = query.getInteger("page");
         int pageSizeQuery = query.getInteger("pageSize");
         int page = (pageQuery > 0) ? pageQuery : DEFAULT_PAGE;
         int pageSize = (pageSizeQuery > 0 && pageSizeQuery <= MAX_PAGE_SIZE) ? pageSizeQuery : DEFAULT_PAGE_SIZE;
+        boolean summary = isSummaryView(query);
+        String viewParam = (summary ? "&view=" + VIEW_SUMMARY : "") + filter.toQueryString();
 
         // Gestion des headers de la réponse
         Response response = context.response();
         List<String> links = new ArrayList<>();
         if (page > 1) {
-            links.add("<" + context.request().uri() + "?page=" + (page - 1) + "&pageSize=" + pageSize + ">; rel=\"prev\"");
+            links.add("<" + context.request().uri() + "?page=" + (page - 1) + "&pageSize=" + pageSize + viewParam + ">; rel=\"prev\"");
         }
         if (page * pageSize < count) {
-            links.add("<" + context.request().uri() + "?page=" + (page + 1) + "&pageSize=" + pageSize + ">; rel=\"next\"");
+            links.add("<" + context.request().uri() + "?page=" + (page + 1) + "&pageSize=" + pageSize + viewParam + ">; rel=\"next\"");
         }
         if (!links.isEmpty()) {
             response.setHeader("Link", links.stream().collect(Collectors.joining(", ")));
         }
 
+        if (!filter.isEmpty()) {
+            return summary
+                    ? this.installationService.listSummaries(filter, page, pageSize)
+                    : this.installationService.list(filter, page, pageSize);
+        }
+        if (summary) {
+            return this.installationService.listSummaries(page, pageSize);
+        }
         return this.installationService.list(page, pageSize);
     }
 
+    /**
+     * Critères de filtrage de la liste, combinés entre eux :
+     * <code>commune</code>, <code>famille</code>, <code>activite</code> (famille et activité d'un même équipement),
+     * <code>minParking</code> (nombre minimal de places de parking), <code>multiCommune</code> (<code>true</code> ou
+     * <code>false</code>) et <code>lat</code>/<code>lng</code>/<code>distance</code> (distance en mètres, 5 km par défaut).
+     * Ex : <code>/?commune=Nantes&amp;activite=Natation&amp;view=summary</code>
+     */
+    private InstallationFilter parseFilter(Query query) {
+        InstallationFilter filter = new InstallationFilter();
+        filter.setCommune(query.get("commune"));
+        filter.setFamille(query.get("famille"));
+        filter.setActivite(query.get("activite"));
+
+        String lat = query.get("lat");
+        String lng = query.get("lng");
+        if (lat != null || lng != null) {
+            if (lat == null || lng == null) {
+                throw new BadRequestException();
+            }
+            try {
+                String distance = query.get("distance");
+                filter.setNear(Double.parseDouble(lat), Double.parseDouble(lng),
+                        distance != null ? Double.parseDouble(distance) : DEFAULT_SEARCH_DISTANCE);
+            } catch (NumberFormatException e) {
+                throw new BadRequestException();
+            }
+            if (Math.abs(filter.getLat()) > 90 || Math.abs(filter.getLng()) > 180 || filter.getDistance() <= 0) {
+                throw new BadRequestException();
+            }
+        }
+
+        String minParking = query.get("minParking");
+        if (minParking != null) {
+            try {
+                filter.setMinParking(Integer.parseInt(minParking));
+            } catch (NumberFormatException e) {
+                throw new BadRequestException();
+            }
+            if (filter.getMinParking() < 0) {
+                throw new BadRequestException();
+            }
+        }
+
+        String multiCommune = query.get("multiCommune");
+        if (multiCommune != null) {
+            if (!"true".equals(multiCommune) && !"false".equals(multiCommune)) {
+                throw new BadRequestException();
+            }
+            filter.setMultiCommune(Boolean.valueOf(multiCommune));
+        }
+
+        return filter;
+    }
+
     @Get("/:numero")
     public Installation get(String numero) {
         return notFoundIfNull(this.installationService.get(numero));
     }
 
+    /**
+     * Récupère plusieurs installations en une seule requête, dans l'ordre demandé.
+     * Les numéros inconnus sont conservés dans la réponse et marqués comme non trouvés.
+     */
+    private List<InstallationLookup> getAll(String ids) {
+        List<String> numeros = new ArrayList<>();
+        for (String id : ids.split(",")) {
+            if (!id.trim().isEmpty()) {
+                numeros.add(id.trim());
+            }
+        }
+        if (numeros.size() > MAX_IDS) {
+            throw new BadRequestException();
+        }
+
+        Map<String, Installation> found = installationService.getAll(new ArrayList<>(new LinkedHashSet<>(numeros)));
+        return numeros.stream()
+                .map(numero -> new InstallationLookup(numero, found.get(numero)))
+                .collect(Collectors.toList());
+    }
 
     @Get("/random")
     public Installation random() {
         return installationService.random();
     }
 
+    /**
+     * Suggestions d'installations pendant la saisie.
+     * Ex : <code>/suggest/pisc?commune=Nantes</code>
+     */
+    @Get("/suggest/:text")
+    public List<InstallationSuggest> suggest(String text, Context context) {
+        return searchService.suggestInstallations(text, context.query().get("commune"));
+    }
+
+    @Get("/search/faceted")
+    public FacetedSearchResult facetedSearch(Context context) {
+        return searchService.searchWithFacets(context.query().get("query"));
+    }
+
     @Get("/search")
-    public List<Installation> search(Context context) {
-        String searchQuery = context.query().get("query");
-        return searchService.search(searchQuery);
+    public List<?> search(Context context) {
+        Query query = context.query();
+        String searchQuery = query.get("query");
+
+        // recherche full-text restreinte à une zone : filtre géographique et pagination faits par le backend de recherche
+        if (query.get("lat") != null && query.get("lng") != null) {
+            double lat = query.getDouble("lat");
+            double lng = query.getDouble("lng");
+            double distance = (query.getDouble("distance") > 0) ? query.getDouble("distance") : DEFAULT_SEARCH_DISTANCE;
+            int pageQuery = query.getInteger("page");
+            int pageSizeQuery = query.getInteger("pageSize");
+            int page = (pageQuery > 0) ? pageQuery : DEFAULT_PAGE;
+            int pageSize = (pageSizeQuery > 0 && pageSizeQuery <= MAX_PAGE_SIZE) ? pageSizeQuery : DEFAULT_PAGE_SIZE;
+            if (isSummaryView(query)) {
+                return searchRouter.searchSummariesNear(searchQuery, lat, lng, distance, page, pageSize);
+            }
+            return searchRouter.searchNear(searchQuery, lat, lng, distance, page, pageSize);
+        }
+
+        if (isSummaryView(query)) {
+            return searchRouter.searchSummaries(searchQuery);
+        }
+        return searchRouter.search(searchQuery);
     }
 
     @Get("/geosearch")
-    public List<Installation> geosearch(Context context) {
+    public List<?> geosearch(Context context) {
         Query query = context.query();
         double lat = query.getDouble("lat");
         double lng = query.getDouble("lng");
         double distance = query.getDouble("distance");
+        if (isSummaryView(query)) {
+            return installationService.geosearchSummaries(lat, lng, distance);
+        }
         return installationService.geosearch(lat, lng, distance);
     }
 
+    /**
+     * Marqueurs à afficher dans une fenêtre de la carte, regroupés selon le niveau de zoom.
+     * Ex : <code>/viewport?minLat=47.2&amp;minLng=-1.6&amp;maxLat=47.4&amp;maxLng=-1.4&amp;zoom=13</code>
+     * Les cinq paramètres sont obligatoires (erreur 400 sinon). Erreur 503 tant que les groupes de marqueurs ne sont
+     * pas construits (cf. {@link MapClusterService#rebuild()}).
+     */
+    @Get("/viewport")
+    public Payload viewport(Context context) {
+        Query query = context.query();
+        double minLat = requiredDouble(query, "minLat");
+        double minLng = requiredDouble(query, "minLng");
+        double maxLat = requiredDouble(query, "maxLat");
+        double maxLng = requiredDouble(query, "maxLng");
+        String zoom = query.get("zoom");
+        if (zoom == null) {
+            throw new BadRequestException();
+        }
+        int zoomLevel;
+        try {
+            zoomLevel = Integer.parseInt(zoom);
+        } catch (NumberFormatException e) {
+            throw new BadRequestException();
+        }
+        if (Math.abs(minLat) > 90 || Math.abs(maxLat) > 90 || Math.abs(minLng) > 180 || Math.abs(maxLng) > 180
+                || minLat > maxLat || minLng > maxLng || zoomLevel < 0) {
+            throw new BadRequestException();
+        }
+        List<MarkerCluster> markers = mapClusterService.viewport(minLat, minLng, maxLat, maxLng, zoomLevel);
+        if (markers == null) {
+            return new Payload("text/plain", "Carte en cours de préparation", 503)
+                    .withHeader("Retry-After", MAP_RETRY_AFTER_SECONDS);
+        }
+        return new Payload(markers);
+    }
+
+    /**
+     * Reconstruit en tâche de fond les groupes de marqueurs de la carte (à appeler après un import des installations) ;
+     * les groupes courants restent servis jusque-là.
+     */
+    @Post("/viewport/cache/invalidate")
+    public void invalidateViewportCache() {
+        mapClusterService.rebuild();
+    }
+
+    private static double requiredDouble(Query query, String name) {
+        String value = query.get(name);
+        if (value == null) {
+            throw new BadRequestException();
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new BadRequestException();
+        }
+    }
+
     @Get("/stats")
     public InstallationsStats stats() {
         InstallationsStats stats = new InstallationsStats();
@@ -97,4 +310,32 @@ public class InstallationResource {
         stats.setAverageEquipmentsPerInstallation(installationService.averageEquipmentsPerInstallation());
         return stats;
     }
+
+    /**
+     * Statistiques pré-agrégées par commune, famille et activité.
+     * Ex : <code>/stats/cube?commune=Nantes&amp;groupBy=famille</code>
+     */
+    @Get("/stats/cube")
+    public List<CubeCell> statsCube(Context context) {
+        Query query = context.query();
+
+        Map<String, String> slices = new HashMap<>();
+        slices.put(StatsCubeService.COMMUNE, query.get(StatsCubeService.COMMUNE));
+        slices.put(StatsCubeService.FAMILLE, query.get(StatsCubeService.FAMILLE));
+        slices.put(StatsCubeService.ACTIVITE, query.get(StatsCubeService.ACTIVITE));
+
+        String groupByQuery = query.get("groupBy");
+        List<String> groupBy = (groupByQuery == null || groupByQuery.isEmpty())
+                ? Collections.emptyList()
+                : Arrays.asList(groupByQuery.split(","));
+
+        return statsCubeService.query(slices, groupBy);
+    }
+
+    /**
+     * Indique si la vue allégée est demandée (<code>view=summary</code>).
+     */
+    private boolean isSummaryView(Query query) {
+        return VIEW_SUMMARY.equals(query.get("view"));
+    }
 }
@@ -0,0 +1,81 @@
+package nosql.workshop.resources;
+
+import com.google.inject.Inject;
+import net.codestory.http.annotations.Get;
+import net.codestory.http.annotations.Post;
+import nosql.workshop.model.metrics.BackendStats;
+import nosql.workshop.model.metrics.BulkheadStats;
+import nosql.workshop.model.metrics.CoalescingStats;
+import nosql.workshop.model.metrics.IndexCheck;
+import nosql.workshop.model.metrics.SlowOperation;
+import nosql.workshop.services.Bulkheads;
+import nosql.workshop.services.InstallationService;
+import nosql.workshop.services.SearchRouter;
+import nosql.workshop.services.SearchService;
+import nosql.workshop.services.SlowQueryLog;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * API REST exposant les métriques de fonctionnement de l'application.
+ */
+public class MetricsResource {
+
+    private final SearchService searchService;
+    private final Bulkheads bulkheads;
+    private final SearchRouter searchRouter;
+    private final SlowQueryLog slowQueryLog;
+    private final InstallationService installationService;
+
+    @Inject
+    public MetricsResource(SearchService searchService, Bulkheads bulkheads, SearchRouter searchRouter, SlowQueryLog slowQueryLog,
+                           InstallationService installationService) {
+        this.searchService = searchService;
+        this.bulkheads = bulkheads;
+        this.searchRouter = searchRouter;
+        this.slowQueryLog = slowQueryLog;
+        this.installationService = installationService;
+    }
+
+    @Get("/coalescing")
+    public Map<String, CoalescingStats> coalescing() {
+        return searchService.getCoalescingStats();
+    }
+
+    @Get("/town-suggest-cache")
+    public Map<String, Long> townSuggestCache() {
+        return searchService.getTownSuggestCacheStats();
+    }
+
+    @Get("/bulkheads")
+    public Map<String, BulkheadStats> bulkheads() {
+        return bulkheads.getStats();
+    }
+
+    @Get("/search-routing")
+    public Map<String, BackendStats> searchRouting() {
+        return searchRouter.getStats();
+    }
+
+    /**
+     * Opérations MongoDB / Elasticsearch lentes, de la plus récente à la plus ancienne.
+     */
+    @Get("/slow-queries")
+    public List<SlowOperation> slowQueries() {
+        return slowQueryLog.getOperations();
+    }
+
+    /**
+     * Plan d'exécution de chaque forme de filtre de la liste des installations : index utilisé, requête couverte.
+     */
+    @Get("/index-check")
+    public List<IndexCheck> indexCheck() {
+        return installationService.checkIndexes();
+    }
+
+    @Post("/slow-queries/clear")
+    public void clearSlowQueries() {
+        slowQueryLog.clear();
+    }
+}
@@ -0,0 +1,27 @@
+package nosql.workshop.resources;
+
+import com.google.inject.Inject;
+import net.codestory.http.annotations.Get;
+import net.codestory.http.payload.Payload;
+import nosql.workshop.services.WarmUp;
+
+/**
+ * Sonde de disponibilité : répond 200 une fois la phase de démarrage terminée, 503 auparavant.
+ */
+public class ReadinessResource {
+
+    private final WarmUp warmUp;
+
+    @Inject
+    public ReadinessResource(WarmUp warmUp) {
+        this.warmUp = warmUp;
+    }
+
+    @Get("/ready")
+    public Payload ready() {
+        if (warmUp.isReady()) {
+            return new Payload("text/plain", "READY", 200);
+        }
+        return new Payload("text/plain", "WARMING_UP", 503);
+    }
+}
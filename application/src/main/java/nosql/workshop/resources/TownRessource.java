@@ -1,22 +1,31 @@
 package nosql.workshop.resources;
 
 import com.google.inject.Inject;
+import net.codestory.http.Context;
 import net.codestory.http.annotations.Get;
+import net.codestory.http.annotations.Post;
+import net.codestory.http.errors.BadRequestException;
+import nosql.workshop.model.suggest.NearestTown;
 import nosql.workshop.model.suggest.TownSuggest;
+import nosql.workshop.services.NearestTownService;
 import nosql.workshop.services.SearchService;
 
 import java.util.List;
 
+import static net.codestory.http.errors.NotFoundException.notFoundIfNull;
+
 /**
  * API REST pour les villes
  * Created by Chris on 12/02/15.
  */
 public class TownRessource {
     private final SearchService searchService;
+    private final NearestTownService nearestTownService;
 
     @Inject
-    public TownRessource(SearchService searchService) {
+    public TownRessource(SearchService searchService, NearestTownService nearestTownService) {
         this.searchService = searchService;
+        this.nearestTownService = nearestTownService;
     }
 
     @Get("suggest/:text")
@@ -24,6 +33,40 @@ public class TownRessource {
         return searchService.suggestTownName(text);
     }
 
+    /**
+     * Vide le cache des suggestions et l'index des villes les plus proches ; appelé par le batch d'import des villes.
+     */
+    @Post("suggest/cache/invalidate")
+    public void invalidateSuggestCache() {
+        searchService.invalidateTownSuggestCache();
+        nearestTownService.invalidate();
+    }
+
+    /**
+     * Ville la plus proche d'un point.
+     * Ex : <code>/nearest?lat=47.2184&amp;lng=-1.5536</code>
+     */
+    @Get("nearest")
+    public NearestTown nearest(Context context) {
+        String latQuery = context.query().get("lat");
+        String lngQuery = context.query().get("lng");
+        if (latQuery == null || lngQuery == null) {
+            throw new BadRequestException();
+        }
+        double lat;
+        double lng;
+        try {
+            lat = Double.parseDouble(latQuery);
+            lng = Double.parseDouble(lngQuery);
+        } catch (NumberFormatException e) {
+            throw new BadRequestException();
+        }
+        if (Math.abs(lat) > 90 || Math.abs(lng) > 180) {
+            throw new BadRequestException();
+        }
+        return notFoundIfNull(nearestTownService.nearest(lat, lng));
+    }
+
     @Get("location/:townName")
     public Double[] getLocation(String townName){
         return searchService.getTownLocation(townName);
@@ -0,0 +1,47 @@
+package nosql.workshop.services;
+
+import nosql.workshop.model.metrics.BackendStats;
+
+/**
+ * Mesure de la latence et du taux d'erreur d'un backend, en moyennes mobiles exponentielles.
+ */
+public class BackendHealth {
+
+    private static final double SMOOTHING = 0.2;
+
+    private final CircuitBreaker circuitBreaker;
+
+    private long calls;
+    private double averageLatencyMs;
+    private double errorRate;
+
+    public BackendHealth(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public synchronized void record(long latencyMs, boolean success) {
+        averageLatencyMs = (calls == 0) ? latencyMs : SMOOTHING * latencyMs + (1 - SMOOTHING) * averageLatencyMs;
+        errorRate = SMOOTHING * (success ? 0 : 1) + (1 - SMOOTHING) * errorRate;
+        calls++;
+    }
+
+    public synchronized long getCalls() {
+        return calls;
+    }
+
+    public synchronized double getAverageLatencyMs() {
+        return averageLatencyMs;
+    }
+
+    public synchronized double getErrorRate() {
+        return errorRate;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public synchronized BackendStats getStats() {
+        return new BackendStats(calls, averageLatencyMs, errorRate, circuitBreaker.getState().name());
+    }
+}
@@ -0,0 +1,64 @@
+package nosql.workshop.services;
+
+import nosql.workshop.model.metrics.BulkheadStats;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Limite le nombre d'appels simultanés vers un backend.
+ * Lorsque la limite est atteinte, l'appel est refusé immédiatement au lieu d'être mis en attente.
+ */
+public class Bulkhead {
+
+    private final String name;
+    private final int maxConcurrent;
+    private final Semaphore permits;
+    private final AtomicLong rejected = new AtomicLong();
+
+    public Bulkhead(String name, int maxConcurrent) {
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.permits = new Semaphore(maxConcurrent);
+    }
+
+    /**
+     * Tente d'obtenir une place ; {@link #release()} doit être appelé en fin d'appel si la place est obtenue.
+     *
+     * @return <code>true</code> si l'appel peut être effectué.
+     */
+    public boolean tryAcquire() {
+        if (permits.tryAcquire()) {
+            return true;
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    /**
+     * Effectue un appel au backend en occupant une place pendant toute sa durée.
+     *
+     * @param call l'appel au backend.
+     * @return le résultat de l'appel.
+     * @throws BulkheadFullException si aucune place n'est disponible.
+     */
+    public <T> T call(Supplier<T> call) {
+        if (!tryAcquire()) {
+            throw new BulkheadFullException(name);
+        }
+        try {
+            return call.get();
+        } finally {
+            release();
+        }
+    }
+
+    public BulkheadStats getStats() {
+        return new BulkheadStats(maxConcurrent, maxConcurrent - permits.availablePermits(), rejected.get());
+    }
+}
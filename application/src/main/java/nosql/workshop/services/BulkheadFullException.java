@@ -0,0 +1,13 @@
+package nosql.workshop.services;
+
+/**
+ * Levée lorsqu'un appel est refusé par la cloison de son backend (cf. {@link Bulkhead}).
+ */
+public class BulkheadFullException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public BulkheadFullException(String backend) {
+        super("Bulkhead full: " + backend);
+    }
+}
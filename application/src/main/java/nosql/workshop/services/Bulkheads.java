@@ -0,0 +1,47 @@
+package nosql.workshop.services;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import nosql.workshop.model.metrics.BulkheadStats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cloisons séparant les appels vers MongoDB de ceux vers Elasticsearch :
+ * un ralentissement de l'un ne doit pas monopoliser les threads utilisés par l'autre.
+ * <p>
+ * Les places sont prises par les services au moment de l'appel au backend (et non selon l'URI appelée) :
+ * les appels servis en mémoire n'en consomment pas, et une recherche repliée sur MongoDB occupe la cloison MongoDB.
+ */
+@Singleton
+public class Bulkheads {
+
+    public static final String MONGO_MAX_CONCURRENT = "bulkhead.mongo.maxConcurrent";
+    public static final String ES_MAX_CONCURRENT = "bulkhead.es.maxConcurrent";
+
+    private final Bulkhead mongo;
+    private final Bulkhead elasticsearch;
+
+    @Inject
+    public Bulkheads(@Named(MONGO_MAX_CONCURRENT) int mongoMaxConcurrent, @Named(ES_MAX_CONCURRENT) int esMaxConcurrent) {
+        this.mongo = new Bulkhead("mongo", mongoMaxConcurrent);
+        this.elasticsearch = new Bulkhead("elasticsearch", esMaxConcurrent);
+    }
+
+    public Bulkhead mongo() {
+        return mongo;
+    }
+
+    public Bulkhead elasticsearch() {
+        return elasticsearch;
+    }
+
+    public Map<String, BulkheadStats> getStats() {
+        Map<String, BulkheadStats> stats = new LinkedHashMap<>();
+        stats.put("mongo", mongo.getStats());
+        stats.put("elasticsearch", elasticsearch.getStats());
+        return stats;
+    }
+}
@@ -0,0 +1,68 @@
+package nosql.workshop.services;
+
+/**
+ * Disjoncteur protégeant un backend : après plusieurs échecs consécutifs, les appels ne sont plus
+ * tentés pendant un délai, au terme duquel un seul appel d'essai est autorisé.
+ */
+public class CircuitBreaker {
+
+    public enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private final int failureThreshold;
+    private final long openDurationMs;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    public CircuitBreaker(int failureThreshold, long openDurationMs) {
+        this.failureThreshold = failureThreshold;
+        this.openDurationMs = openDurationMs;
+    }
+
+    /**
+     * Indique si un appel peut être tenté. Passe en demi-ouverture (un appel d'essai) une fois le délai écoulé.
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() - openedAt >= openDurationMs) {
+                    state = State.HALF_OPEN;
+                    return true;
+                }
+                return false;
+            default:
+                // un appel d'essai est déjà en cours
+                return false;
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Termine un appel d'essai sans conclure sur l'état du backend (appel non effectué ou interrompu par l'appelant) :
+     * le disjoncteur reste ouvert et un nouvel essai pourra être tenté.
+     */
+    public synchronized void releaseTrial() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,74 @@
+package nosql.workshop.services;
+
+import com.mongodb.AggregationOptions;
+import org.jongo.QueryModifier;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Échéance de la requête HTTP en cours, partagée par tous les appels MongoDB et Elasticsearch qu'elle déclenche.
+ * <p>
+ * L'échéance est positionnée par le filtre {@link nosql.workshop.filters.DeadlineFilter} pour le thread traitant
+ * la requête ; chaque appel reçoit le temps restant (<code>maxTimeMS</code> MongoDB, timeout de recherche ES).
+ * Hors requête HTTP (tâches de fond), aucune échéance n'est appliquée.
+ */
+public final class Deadline {
+
+    private static final ThreadLocal<Long> EXPIRES_AT = new ThreadLocal<>();
+
+    private Deadline() {
+    }
+
+    /**
+     * Démarre une échéance pour le thread courant.
+     *
+     * @param budgetMillis le temps accordé à la requête, en millisecondes.
+     */
+    public static void start(long budgetMillis) {
+        EXPIRES_AT.set(System.currentTimeMillis() + budgetMillis);
+    }
+
+    public static void clear() {
+        EXPIRES_AT.remove();
+    }
+
+    public static boolean isSet() {
+        return EXPIRES_AT.get() != null;
+    }
+
+    /**
+     * Retourne le temps restant avant l'échéance.
+     *
+     * @return le temps restant, en millisecondes.
+     * @throws DeadlineExceededException si l'échéance est dépassée.
+     */
+    public static long remainingMillis() {
+        long remaining = EXPIRES_AT.get() - System.currentTimeMillis();
+        if (remaining <= 0) {
+            throw new DeadlineExceededException();
+        }
+        return remaining;
+    }
+
+    /**
+     * Limite la durée d'exécution d'une requête <code>find</code> au temps restant.
+     */
+    public static QueryModifier mongoMaxTime() {
+        return cursor -> {
+            if (isSet()) {
+                cursor.maxTime(remainingMillis(), TimeUnit.MILLISECONDS);
+            }
+        };
+    }
+
+    /**
+     * Options d'agrégation limitant la durée d'exécution au temps restant.
+     */
+    public static AggregationOptions mongoAggregationOptions() {
+        AggregationOptions.Builder options = AggregationOptions.builder();
+        if (isSet()) {
+            options.maxTime(remainingMillis(), TimeUnit.MILLISECONDS);
+        }
+        return options.build();
+    }
+}
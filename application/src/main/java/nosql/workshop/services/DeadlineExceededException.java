@@ -0,0 +1,13 @@
+package nosql.workshop.services;
+
+/**
+ * Levée lorsque l'échéance de la requête en cours est dépassée (cf. {@link Deadline}).
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public DeadlineExceededException() {
+        super("Request deadline exceeded");
+    }
+}
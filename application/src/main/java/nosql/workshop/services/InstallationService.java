@@ -1,53 +1,35 @@
 package nosql.workshop.services;
 
-import com.google.inject.Inject;
 import nosql.workshop.model.Installation;
-import nosql.workshop.model.stats.Average;
+import nosql.workshop.model.InstallationFilter;
+import nosql.workshop.model.InstallationSummary;
+import nosql.workshop.model.metrics.IndexCheck;
 import nosql.workshop.model.stats.CountByActivity;
-import org.jongo.MongoCollection;
 
-import java.net.UnknownHostException;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
 
 /**
  * Service permettant de manipuler les installations sportives.
+ * <p>
+ * Implémentations : {@link MongoInstallationService} (MongoDB) et {@link SnapshotInstallationService}
+ * (snapshot binaire en lecture seule, sans MongoDB). La recherche full-text relève de {@link TextSearchService}.
  */
-public class InstallationService {
+public interface InstallationService {
 
     /**
-     * Nom de la collection MongoDB.
+     * Crée les différents index requis par le stockage des installations.
+     * Appelé en tâche de fond au démarrage (cf. {@link WarmUp}), afin de ne pas bloquer le démarrage sur la base.
      */
-    public static final String COLLECTION_NAME = "installations";
-
-    private final MongoCollection installations;
-
-    @Inject
-    public InstallationService(MongoDB mongoDB) throws UnknownHostException {
-        this.installations = mongoDB.getJongo().getCollection(COLLECTION_NAME);
-        createIndexes();
-    }
+    void createIndexes();
 
     /**
-     * Crée les différents index requis par Mongo
+     * Vérifie, pour chaque forme de filtre de la liste, que le plan d'exécution retenu utilise un index. Le plan est
+     * celui de la liste résumée, avec sa projection ; la liste complète lit toujours les documents.
+     *
+     * @return le résultat de la vérification, par forme de filtre.
      */
-    private void createIndexes() {
-        installations.ensureIndex(
-                "{"+
-                        "nom: \"text\"," +
-                        "adresse.commune: \"text\"" +
-                "},"+
-                "{" +
-                    "weights: {" +
-                        "nom: 3," +
-                        "adresse.commune: 10" +
-                    "}," +
-                    "default_language: \"french\"" +
-                "}"
-        );
-        installations.ensureIndex("{location: \"2dsphere\"}");
-    }
+    List<IndexCheck> checkIndexes();
 
     /**
      * Retourne une installation étant donné son numéro.
@@ -55,147 +37,96 @@ public class InstallationService {
      * @param numero le numéro de l'installation.
      * @return l'installation correspondante, ou <code>null</code> si non trouvée.
      */
-    public Installation get(String numero) {
-        return installations.findOne("{_id: \""+numero+"\"}").as(Installation.class);
-    }
+    Installation get(String numero);
+
+    /**
+     * Retourne plusieurs installations en une seule requête.
+     *
+     * @param numeros les numéros des installations.
+     * @return les installations trouvées, indexées par numéro.
+     */
+    Map<String, Installation> getAll(List<String> numeros);
 
     /**
      * Retourne la liste des installations.
      *
-     * @param page     la page à retourner.
+     * @param page     la page à retourner (à partir de 1).
      * @param pageSize le nombre d'installations par page.
      * @return la liste des installations.
      */
-    public List<Installation> list(int page, int pageSize) {
-        Iterable<Installation> iterable = installations.find().skip(pageSize*page).limit(pageSize).as(Installation.class);
+    List<Installation> list(int page, int pageSize);
 
-        List<Installation> installs = new ArrayList<>();
-        iterable.forEach(installs::add);
+    /**
+     * Retourne la liste des installations, en vue allégée.
+     *
+     * @param page     la page à retourner (à partir de 1).
+     * @param pageSize le nombre d'installations par page.
+     * @return la liste des installations (nom, commune et position uniquement).
+     */
+    List<InstallationSummary> listSummaries(int page, int pageSize);
 
-        return installs;
-    }
+    /**
+     * Retourne la liste filtrée des installations.
+     *
+     * @param filter   les critères de filtrage.
+     * @param page     la page à retourner (à partir de 1).
+     * @param pageSize le nombre d'installations par page.
+     * @return la liste des installations satisfaisant les critères.
+     */
+    List<Installation> list(InstallationFilter filter, int page, int pageSize);
+
+    /**
+     * Retourne la liste filtrée des installations, en vue allégée.
+     *
+     * @param filter   les critères de filtrage.
+     * @param page     la page à retourner (à partir de 1).
+     * @param pageSize le nombre d'installations par page.
+     * @return la liste des installations satisfaisant les critères (nom, commune et position uniquement).
+     */
+    List<InstallationSummary> listSummaries(InstallationFilter filter, int page, int pageSize);
 
     /**
      * Retourne une installation aléatoirement.
      *
      * @return une installation.
      */
-    public Installation random() {
-        long count = count();
-        int random = new Random().nextInt((int) count);
-        return this.list(0, (int) count).get(random);
-    }
+    Installation random();
 
     /**
      * Retourne le nombre total d'installations.
      *
      * @return le nombre total d'installations
      */
-    public long count() {
-        return installations.count();
-    }
+    long count();
+
+    /**
+     * Retourne le nombre d'installations satisfaisant des critères.
+     *
+     * @param filter les critères de filtrage.
+     * @return le nombre d'installations correspondantes.
+     */
+    long count(InstallationFilter filter);
 
     /**
      * Retourne l'installation avec le plus d'équipements.
      *
      * @return l'installation avec le plus d'équipements.
      */
-    public Installation installationWithMaxEquipments() {
-        Iterable<Installation> iterable = installations.aggregate(
-                "{" +
-                    "$project: {" +
-                        "numberOfEquipements: {$size: \"$equipements\"}," +
-                        "nom: 1," +
-                        "equipements: 1" +
-                    "}," +
-                "}"
-            ).and(
-                "{" +
-                    "$sort: {" +
-                        "numberOfEquipements: -1" +
-                    "}" +
-                "}"
-            ).and(
-                "{" +
-                    "$limit : 1" +
-                "}"
-            ).as(Installation.class);
-
-        return iterable.iterator().next();
-    }
+    Installation installationWithMaxEquipments();
 
     /**
      * Compte le nombre d'installations par activité.
      *
      * @return le nombre d'installations par activité.
      */
-    public List<CountByActivity> countByActivity() {
-        Iterable<CountByActivity> iterable = installations.aggregate(
-            "{" +
-                "$unwind: \"$equipements\"" +
-            "},"
-        ).and(
-                "{" +
-                        "$unwind: \"$equipements.activites\"" +
-                        "},"
-        ).and(
-            "{" +
-                "$group: {" +
-                    "_id: \"$equipements.activites\"," +
-                    "total: {$sum: 1}" +
-                "}" +
-            "}"
-        ).and(
-            "{" +
-                "$project : {" +
-                    "activite: \"$_id\"," +
-                    "total: 1" +
-                "}" +
-            "}"
-        ).as(CountByActivity.class);
-
-        List<CountByActivity> countByActivities = new ArrayList<>();
-        iterable.forEach(countByActivities::add);
-
-        return countByActivities;
-    }
-
-    /*
-     * see http://docs.mongodb.org/manual/reference/operator/aggregation/group/#group-by-null
-     */
-    public double averageEquipmentsPerInstallation() {
-        Iterable<Average> average = installations.aggregate(
-                "{\n" +
-                        "    $group : {\n" +
-                        "       _id : null,\n" +
-                        "       average: { $avg: {$size : \"$equipements\" }}\n" +
-                        "    }\n" +
-                        "  }"
-        ).as(Average.class);
-        return average.iterator().next().getAverage();
-    }
-
-    /**
-     * Recherche des installations sportives.
+    List<CountByActivity> countByActivity();
+
+    /**
+     * Retourne le nombre moyen d'équipements par installation.
      *
-     * @param searchQuery la requête de recherche.
-     * @return les résultats correspondant à la requête.
+     * @return le nombre moyen d'équipements par installation.
      */
-    public List<Installation> search(String searchQuery) {
-        Iterable<Installation> iterable = installations.find(
-                "{$text: {$search: #}},"+
-                "{score: {\"$meta\": \"textScore\"}},"
-            , searchQuery)
-            .projection("{score: {$meta: 'textScore'}}")
-            .sort("{score: {\"$meta\": \"textScore\"}}")
-            .limit(10)
-            .as(Installation.class);
-
-        List<Installation> installs = new ArrayList<>();
-        iterable.forEach(installs::add);
-
-        return installs;
-    }
+    double averageEquipmentsPerInstallation();
 
     /**
      * Recherche des installations sportives par proximité géographique.
@@ -205,12 +136,15 @@ public class InstallationService {
      * @param distance rayon de recherche.
      * @return les installations dans la zone géographique demandée.
      */
-    public List<Installation> geosearch(double lat, double lng, double distance) {
-        Iterable<Installation> iterable = installations.find("{location: { $near :{ $geometry :{ type : \"Point\" , coordinates : ["+lng+", "+lat+"]}, $maxDistance : "+distance+"}} }").as(Installation.class);
-
-        List<Installation> installs = new ArrayList<>();
-        iterable.forEach(installs::add);
+    List<Installation> geosearch(double lat, double lng, double distance);
 
-        return installs;
-    }
+    /**
+     * Recherche des installations sportives par proximité géographique, en vue allégée.
+     *
+     * @param lat      latitude du point de départ.
+     * @param lng      longitude du point de départ.
+     * @param distance rayon de recherche.
+     * @return les installations dans la zone géographique demandée (nom, commune et position uniquement).
+     */
+    List<InstallationSummary> geosearchSummaries(double lat, double lng, double distance);
 }
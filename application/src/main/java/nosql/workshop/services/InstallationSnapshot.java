@@ -0,0 +1,119 @@
+package nosql.workshop.services;
+
+import nosql.workshop.snapshot.SnapshotFormat;
+import org.jongo.Mapper;
+import org.jongo.bson.Bson;
+import org.jongo.marshall.jackson.JacksonMapper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Snapshot binaire des installations produit par le batch <code>MongoDbToSnapshot</code> (cf. {@link SnapshotFormat}),
+ * projeté en mémoire.
+ * <p>
+ * Seul l'index (identifiants et coordonnées) est lu au chargement ; les documents BSON sont décodés à la demande.
+ * Un fichier de plus de {@link SnapshotFormat#MAX_SIZE} octets, ou dont l'index désigne des documents hors du fichier,
+ * est refusé.
+ */
+public class InstallationSnapshot {
+
+    private final MappedByteBuffer buffer;
+    private final Mapper mapper = new JacksonMapper.Builder().build();
+
+    private final long createdAt;
+    private final String[] ids;
+    private final double[] longitudes;
+    private final double[] latitudes;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final Map<String, Integer> positions = new HashMap<>();
+
+    public InstallationSnapshot(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > SnapshotFormat.MAX_SIZE) {
+                throw new IOException(file + " is larger than " + SnapshotFormat.MAX_SIZE + " bytes");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.getInt() != SnapshotFormat.MAGIC) {
+            throw new IOException(file + " is not an installations snapshot");
+        }
+        int version = buffer.getInt();
+        if (version != SnapshotFormat.FORMAT_VERSION) {
+            throw new IOException("Unsupported snapshot version " + version + " in " + file);
+        }
+        createdAt = buffer.getLong();
+
+        int count = buffer.getInt();
+        ids = new String[count];
+        longitudes = new double[count];
+        latitudes = new double[count];
+        offsets = new int[count];
+        lengths = new int[count];
+        for (int i = 0; i < count; i++) {
+            byte[] id = new byte[buffer.getShort()];
+            buffer.get(id);
+            ids[i] = new String(id, StandardCharsets.UTF_8);
+            longitudes[i] = buffer.getDouble();
+            latitudes[i] = buffer.getDouble();
+            long offset = buffer.getLong();
+            lengths[i] = buffer.getInt();
+            if (offset < 0 || lengths[i] < 0 || offset + lengths[i] > buffer.capacity()) {
+                throw new IOException("Corrupted snapshot " + file + " : document " + ids[i] + " out of the file");
+            }
+            offsets[i] = (int) offset;
+            positions.put(ids[i], i);
+        }
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * Retourne la position d'une installation dans le snapshot.
+     *
+     * @param numero le numéro de l'installation.
+     * @return la position, ou <code>-1</code> si l'installation est absente.
+     */
+    public int indexOf(String numero) {
+        Integer position = positions.get(numero);
+        return position == null ? -1 : position;
+    }
+
+    public double getLongitude(int position) {
+        return longitudes[position];
+    }
+
+    public double getLatitude(int position) {
+        return latitudes[position];
+    }
+
+    /**
+     * Décode l'installation à la position donnée.
+     *
+     * @param position la position dans le snapshot.
+     * @param type     la classe vers laquelle décoder le document (installation complète ou vue allégée).
+     * @return l'objet décodé.
+     */
+    public <T> T read(int position, Class<T> type) {
+        byte[] document = new byte[lengths[position]];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offsets[position]);
+        view.get(document);
+        return mapper.getUnmarshaller().unmarshall(Bson.createDocument(document), type);
+    }
+}
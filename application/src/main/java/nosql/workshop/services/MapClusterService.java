@@ -0,0 +1,252 @@
+package nosql.workshop.services;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import nosql.workshop.model.InstallationSummary;
+import nosql.workshop.model.map.MarkerCluster;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Regroupement des installations en marqueurs pour l'affichage de la carte.
+ * <p>
+ * Une grille est pré-calculée pour chaque niveau de zoom jusqu'à {@link #MAX_CLUSTER_ZOOM}, en coordonnées
+ * Web Mercator (celles des tuiles de la carte) : une cellule couvre le même nombre de pixels à l'écran quelle que soit
+ * la latitude, et sa taille est divisée par deux à chaque niveau, ce qui borne le nombre de marqueurs renvoyés pour
+ * une fenêtre d'affichage quel que soit le zoom. Au-delà, les installations sont renvoyées individuellement.
+ * <p>
+ * Les grilles sont construites en tâche de fond (cf. {@link #rebuild()}), hors de toute requête : le parcours
+ * de toutes les installations n'est soumis ni à l'échéance d'une requête ni à son attente. Tant que les premières
+ * grilles ne sont pas prêtes, la carte n'est pas servie ; ensuite, les grilles courantes restent servies pendant
+ * leur reconstruction.
+ */
+@Singleton
+public class MapClusterService {
+
+    public static final int MAX_CLUSTER_ZOOM = 15;
+
+    /**
+     * Nombre de cellules par tuile de carte (256 pixels) : une cellule fait 64 pixels de côté.
+     */
+    private static final int CELLS_PER_TILE = 4;
+    // latitude limite de la projection Web Mercator (carte carrée)
+    private static final double MAX_MERCATOR_LAT = 85.05112878;
+    private static final long RETRY_DELAY_MS = 5_000;
+
+    private final InstallationService installationService;
+    private final ExecutorService builder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "map-clusters");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean rebuildPending = new AtomicBoolean();
+
+    private volatile Grids grids;
+
+    @Inject
+    public MapClusterService(InstallationService installationService) {
+        this.installationService = installationService;
+    }
+
+    /**
+     * Retourne les marqueurs à afficher dans une fenêtre de la carte.
+     *
+     * @param minLat latitude du bord sud.
+     * @param minLng longitude du bord ouest.
+     * @param maxLat latitude du bord nord.
+     * @param maxLng longitude du bord est.
+     * @param zoom   niveau de zoom de la carte.
+     * @return les groupes d'installations, ou les installations elles-mêmes aux niveaux de zoom élevés ;
+     * <code>null</code> si les grilles ne sont pas encore construites.
+     */
+    public List<MarkerCluster> viewport(double minLat, double minLng, double maxLat, double maxLng, int zoom) {
+        Grids current = grids;
+        if (current == null) {
+            return null;
+        }
+
+        List<MarkerCluster> markers = new ArrayList<>();
+        if (zoom > MAX_CLUSTER_ZOOM) {
+            for (InstallationSummary point : current.points) {
+                double lat = point.getLocation().getCoordinates()[1];
+                double lng = point.getLocation().getCoordinates()[0];
+                if (lat >= minLat && lat <= maxLat && lng >= minLng && lng <= maxLng) {
+                    markers.add(new MarkerCluster(lat, lng, 1, point.getNumero(), point.getNom()));
+                }
+            }
+            return markers;
+        }
+
+        int level = Math.max(zoom, 0);
+        double cellSize = cellSize(level);
+        long minX = (long) Math.floor(mercatorX(minLng) / cellSize);
+        long maxX = (long) Math.floor(mercatorX(maxLng) / cellSize);
+        // l'axe y de la projection est orienté vers le sud
+        long minY = (long) Math.floor(mercatorY(maxLat) / cellSize);
+        long maxY = (long) Math.floor(mercatorY(minLat) / cellSize);
+
+        for (Cell cell : current.levels.get(level).values()) {
+            if (cell.x >= minX && cell.x <= maxX && cell.y >= minY && cell.y <= maxY) {
+                InstallationSummary representative = cell.representative;
+                markers.add(new MarkerCluster(cell.latitude(), cell.longitude(), cell.count,
+                        representative.getNumero(), cell.count == 1 ? representative.getNom() : null));
+            }
+        }
+        return markers;
+    }
+
+    /**
+     * Demande la reconstruction des grilles en tâche de fond : au démarrage (cf. {@link WarmUp}) et après un import
+     * des installations. Les demandes reçues avant le début de la reconstruction sont regroupées.
+     */
+    public void rebuild() {
+        if (rebuildPending.compareAndSet(false, true)) {
+            builder.execute(this::build);
+        }
+    }
+
+    public boolean isReady() {
+        return grids != null;
+    }
+
+    /**
+     * Construit les grilles, en réessayant tant que les installations ne peuvent être lues.
+     */
+    private void build() {
+        // une demande reçue pendant la construction en relance une autre, sur des données à jour
+        rebuildPending.set(false);
+        while (true) {
+            try {
+                long start = System.currentTimeMillis();
+                Grids built = buildGrids();
+                grids = built;
+                System.out.println("Groupes de marqueurs de la carte construits en " + (System.currentTimeMillis() - start)
+                        + " ms (" + built.points.size() + " installations)");
+                return;
+            } catch (RuntimeException e) {
+                System.out.println("Construction des groupes de marqueurs en échec, nouvel essai dans " + RETRY_DELAY_MS + " ms : " + e.getMessage());
+            }
+            try {
+                Thread.sleep(RETRY_DELAY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Construit la hiérarchie de grilles : les installations ne changent que lors des imports.
+     */
+    private Grids buildGrids() {
+        List<InstallationSummary> located = new ArrayList<>();
+        for (InstallationSummary summary : installationService.listSummaries(1, (int) installationService.count())) {
+            if (summary.getLocation() != null && summary.getLocation().getCoordinates() != null
+                    && summary.getLocation().getCoordinates().length == 2) {
+                located.add(summary);
+            }
+        }
+
+        List<Map<Long, Cell>> levels = new ArrayList<>();
+        for (int zoom = 0; zoom <= MAX_CLUSTER_ZOOM; zoom++) {
+            double cellSize = cellSize(zoom);
+            Map<Long, Cell> grid = new HashMap<>();
+            for (InstallationSummary point : located) {
+                long x = (long) Math.floor(mercatorX(point.getLocation().getCoordinates()[0]) / cellSize);
+                long y = (long) Math.floor(mercatorY(point.getLocation().getCoordinates()[1]) / cellSize);
+                grid.computeIfAbsent((x << 32) | y, key -> new Cell(x, y)).add(point);
+            }
+            // représentant : l'installation la plus proche du centre de sa cellule
+            for (InstallationSummary point : located) {
+                long x = (long) Math.floor(mercatorX(point.getLocation().getCoordinates()[0]) / cellSize);
+                long y = (long) Math.floor(mercatorY(point.getLocation().getCoordinates()[1]) / cellSize);
+                grid.get((x << 32) | y).elect(point);
+            }
+            levels.add(grid);
+        }
+
+        return new Grids(located, levels);
+    }
+
+    /**
+     * Taille d'une cellule, en fraction de la largeur de la carte du monde.
+     */
+    private static double cellSize(int zoom) {
+        return 1.0 / ((1L << zoom) * CELLS_PER_TILE);
+    }
+
+    /**
+     * Abscisse Web Mercator, de 0 (longitude -180) à 1 (longitude 180).
+     */
+    private static double mercatorX(double lng) {
+        return (lng + 180) / 360;
+    }
+
+    /**
+     * Ordonnée Web Mercator, de 0 (nord) à 1 (sud) ; les latitudes hors de la carte sont ramenées à ses bords.
+     */
+    private static double mercatorY(double lat) {
+        double phi = Math.toRadians(Math.max(-MAX_MERCATOR_LAT, Math.min(MAX_MERCATOR_LAT, lat)));
+        return (1 - Math.log(Math.tan(phi) + 1 / Math.cos(phi)) / Math.PI) / 2;
+    }
+
+    /**
+     * Installations localisées et grille de chaque niveau de zoom, immuables une fois construites.
+     */
+    private static class Grids {
+
+        private final List<InstallationSummary> points;
+        private final List<Map<Long, Cell>> levels;
+
+        private Grids(List<InstallationSummary> points, List<Map<Long, Cell>> levels) {
+            this.points = points;
+            this.levels = levels;
+        }
+    }
+
+    private static class Cell {
+
+        private final long x;
+        private final long y;
+        private int count;
+        private double sumLat;
+        private double sumLng;
+        private InstallationSummary representative;
+        private double representativeDistance = Double.MAX_VALUE;
+
+        private Cell(long x, long y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        private void add(InstallationSummary point) {
+            count++;
+            sumLng += point.getLocation().getCoordinates()[0];
+            sumLat += point.getLocation().getCoordinates()[1];
+        }
+
+        private void elect(InstallationSummary point) {
+            double dLat = point.getLocation().getCoordinates()[1] - latitude();
+            double dLng = point.getLocation().getCoordinates()[0] - longitude();
+            double distance = dLat * dLat + dLng * dLng;
+            if (distance < representativeDistance) {
+                representativeDistance = distance;
+                representative = point;
+            }
+        }
+
+        private double latitude() {
+            return sumLat / count;
+        }
+
+        private double longitude() {
+            return sumLng / count;
+        }
+    }
+}
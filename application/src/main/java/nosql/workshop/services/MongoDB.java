@@ -13,15 +13,21 @@ public class MongoDB {
 
     public static final String DB_NAME = "nosql-workshop";
 
+    // client créé à la première demande : aucune connexion n'est ouverte en mode snapshot
+    private Jongo jongo;
+
     /**
      * Retourne une instance Jongo permettant de se connecter à la base MongoDB.
      *
      * @return l'instance Jongo.
      * @throws UnknownHostException si la base n'est pas disponible.
      */
-    public Jongo getJongo() throws UnknownHostException {
-        MongoClient mongoClient = new MongoClient();
-        DB db = mongoClient.getDB(DB_NAME);
-        return new Jongo(db);
+    public synchronized Jongo getJongo() throws UnknownHostException {
+        if (jongo == null) {
+            MongoClient mongoClient = new MongoClient();
+            DB db = mongoClient.getDB(DB_NAME);
+            jongo = new Jongo(db);
+        }
+        return jongo;
     }
 }
@@ -0,0 +1,517 @@
+package nosql.workshop.services;
+
+import com.google.inject.Inject;
+import com.mongodb.AggregationOptions;
+import com.mongodb.Cursor;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import nosql.workshop.model.Geo;
+import nosql.workshop.model.Installation;
+import nosql.workshop.model.InstallationFilter;
+import nosql.workshop.model.InstallationSummary;
+import nosql.workshop.model.metrics.IndexCheck;
+import nosql.workshop.model.stats.Average;
+import nosql.workshop.model.stats.CountByActivity;
+import org.jongo.Jongo;
+import org.jongo.Mapper;
+import org.jongo.MongoCollection;
+import org.jongo.bson.Bson;
+import org.jongo.marshall.jackson.JacksonMapper;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Service des installations sportives s'appuyant sur MongoDB.
+ */
+public class MongoInstallationService implements InstallationService, TextSearchService {
+
+    /**
+     * Nom de la collection MongoDB.
+     */
+    public static final String COLLECTION_NAME = "installations";
+
+    private static final String MONGO = "mongo";
+    // étapes d'un plan d'exécution (MongoDB 3.x) qui parcourent un index, et celles dont l'index peut couvrir la requête
+    private static final List<String> INDEX_STAGES = Arrays.asList(
+            "IXSCAN", "COUNT_SCAN", "DISTINCT_SCAN", "IDHACK", "GEO_NEAR_2D", "GEO_NEAR_2DSPHERE", "TEXT");
+    private static final List<String> COVERING_STAGES = Arrays.asList("IXSCAN", "COUNT_SCAN", "DISTINCT_SCAN");
+    // valeurs des formes de filtre vérifiées : seule la forme compte, pas le contenu de la base
+    private static final String PLACEHOLDER = "?";
+    private static final int PLACEHOLDER_NUMBER = 0;
+    private static final double PLACEHOLDER_DISTANCE = 1;
+    private static final int SEARCH_LIMIT = 10;
+    private static final long EXPLAIN_TIMEOUT_MS = 10_000;
+    private static final String TEXT_QUERY = "{$text: {$search: #}}";
+    private static final String TEXT_NEAR_QUERY = "{$text: {$search: #}, location: {$geoWithin: {$centerSphere: [[#, #], #]}}}";
+    private static final String TEXT_SCORE = "{score: {$meta: 'textScore'}}";
+    // InstallationSummary.MONGO_PROJECTION complétée du score textuel, nécessaire au tri
+    private static final String SUMMARY_TEXT_SCORE = "{nom: 1, adresse.commune: 1, location: 1, score: {$meta: 'textScore'}}";
+
+    private final Jongo jongo;
+    private final MongoCollection installations;
+    private final Mapper mapper = new JacksonMapper.Builder().build();
+    private final SlowQueryLog slowQueryLog;
+    private final Bulkhead bulkhead;
+
+    @Inject
+    public MongoInstallationService(MongoDB mongoDB, SlowQueryLog slowQueryLog, Bulkheads bulkheads) throws UnknownHostException {
+        this.jongo = mongoDB.getJongo();
+        this.installations = jongo.getCollection(COLLECTION_NAME);
+        this.slowQueryLog = slowQueryLog;
+        this.bulkhead = bulkheads.mongo();
+    }
+
+    @Override
+    public void createIndexes() {
+        installations.ensureIndex(
+                "{"+
+                        "nom: \"text\"," +
+                        "adresse.commune: \"text\"" +
+                "},"+
+                "{" +
+                    "weights: {" +
+                        "nom: 3," +
+                        "adresse.commune: 10" +
+                    "}," +
+                    "default_language: \"french\"" +
+                "}"
+        );
+        installations.ensureIndex("{location: \"2dsphere\"}");
+        // filtres de la liste (cf. InstallationFilter) : égalité puis intervalle, couvrant les critères scalaires
+        installations.ensureIndex("{nbPlacesParking: 1}");
+        installations.ensureIndex("{multiCommune: 1, nbPlacesParking: 1}");
+        installations.ensureIndex("{adresse.commune: 1, multiCommune: 1, nbPlacesParking: 1}");
+        // index multiclés sur les équipements, la commune en second critère
+        installations.ensureIndex("{equipements.famille: 1, adresse.commune: 1}");
+        installations.ensureIndex("{equipements.activites: 1, adresse.commune: 1}");
+    }
+
+    @Override
+    public List<IndexCheck> checkIndexes() {
+        List<IndexCheck> checks = new ArrayList<>();
+        for (InstallationFilter filter : indexCheckFilters()) {
+            DBObject query = jongo.createQuery(filter.toMongoQuery(), filter.toMongoParameters()).toDBObject();
+            // plan de la requête telle qu'envoyée par listSummaries(), avec sa projection : list() lit le document entier
+            DBObject projection = jongo.createQuery(InstallationSummary.MONGO_PROJECTION).toDBObject();
+            DBObject plan = installations.getDBCollection().find(query, projection)
+                    .maxTime(EXPLAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                    .explain();
+
+            List<String> stages = new ArrayList<>();
+            List<String> indexes = new ArrayList<>();
+            collectPlan(plan, stages, indexes);
+
+            boolean indexed = stages.stream().anyMatch(INDEX_STAGES::contains) && !stages.contains("COLLSCAN");
+            // les étapes géographiques et texte lisent elles-mêmes les documents, sans étape FETCH
+            boolean covered = indexed && (Boolean.TRUE.equals(plan.get("indexOnly"))
+                    || plan.get("queryPlanner") != null && !stages.contains("FETCH")
+                        && stages.stream().filter(INDEX_STAGES::contains).allMatch(COVERING_STAGES::contains));
+            checks.add(new IndexCheck(filter.getShape(), query.toString(), indexed, String.join(", ", indexes), covered));
+        }
+        return checks;
+    }
+
+    /**
+     * Formes de filtre vérifiées par {@link #checkIndexes()}, construites avec des valeurs fictives.
+     */
+    private static List<InstallationFilter> indexCheckFilters() {
+        List<InstallationFilter> filters = new ArrayList<>();
+        for (String shape : Arrays.asList("commune", "commune+multiCommune+minParking", "commune+minParking", "minParking",
+                "multiCommune+minParking", "famille", "famille+commune", "activite", "activite+commune", "famille+activite", "near",
+                "near+activite")) {
+            InstallationFilter filter = new InstallationFilter();
+            for (String criterion : shape.split("\\+")) {
+                switch (criterion) {
+                    case "commune": filter.setCommune(PLACEHOLDER); break;
+                    case "multiCommune": filter.setMultiCommune(false); break;
+                    case "minParking": filter.setMinParking(PLACEHOLDER_NUMBER); break;
+                    case "famille": filter.setFamille(PLACEHOLDER); break;
+                    case "activite": filter.setActivite(PLACEHOLDER); break;
+                    case "near": filter.setNear(PLACEHOLDER_NUMBER, PLACEHOLDER_NUMBER, PLACEHOLDER_DISTANCE); break;
+                    default: throw new IllegalArgumentException(criterion);
+                }
+            }
+            filters.add(filter);
+        }
+        return filters;
+    }
+
+    /**
+     * Parcourt le plan d'exécution retenu (format MongoDB 2.6 ou 3.x) : étapes et index utilisés.
+     */
+    private static void collectPlan(Object node, List<String> stages, List<String> indexes) {
+        if (!(node instanceof DBObject)) {
+            return;
+        }
+        DBObject object = (DBObject) node;
+        if (object.get("queryPlanner") instanceof DBObject) {
+            collectPlan(((DBObject) object.get("queryPlanner")).get("winningPlan"), stages, indexes);
+            return;
+        }
+        if (object.get("stage") != null) {
+            stages.add(object.get("stage").toString());
+        }
+        if (object.get("indexName") != null) {
+            indexes.add(object.get("indexName").toString());
+        }
+        if (object.get("cursor") instanceof String) {
+            String cursor = (String) object.get("cursor");
+            stages.add(cursor.startsWith("BasicCursor") ? "COLLSCAN" : "IXSCAN");
+            if (cursor.contains(" ")) {
+                indexes.add(cursor.substring(cursor.indexOf(' ') + 1));
+            }
+        }
+        for (String key : object.keySet()) {
+            if (!"allPlans".equals(key) && !"rejectedPlans".equals(key) && !"oldPlan".equals(key)) {
+                collectPlan(object.get(key), stages, indexes);
+            }
+        }
+    }
+
+    @Override
+    public Installation get(String numero) {
+        return record("get", () -> "{_id: " + numero + "}", () -> {
+            Iterator<Installation> iterator = installations.find("{_id: #}", numero)
+                    .limit(1)
+                    .with(Deadline.mongoMaxTime())
+                    .as(Installation.class)
+                    .iterator();
+            return iterator.hasNext() ? iterator.next() : null;
+        }, () -> explain("{_id: #}", numero));
+    }
+
+    @Override
+    public Map<String, Installation> getAll(List<String> numeros) {
+        return record("getAll", () -> "{_id: {$in: " + numeros + "}}", () -> {
+            Iterable<Installation> iterable = installations.find("{_id: {$in: #}}", numeros)
+                    .with(Deadline.mongoMaxTime())
+                    .as(Installation.class);
+
+            Map<String, Installation> installs = new HashMap<>();
+            iterable.forEach(installation -> installs.put(installation.getNumero(), installation));
+
+            return installs;
+        }, () -> explain("{_id: {$in: #}}", numeros));
+    }
+
+    @Override
+    public List<Installation> list(int page, int pageSize) {
+        return record("list", () -> "{} skip " + pageSize * (page - 1) + " limit " + pageSize, () -> {
+            Iterable<Installation> iterable = installations.find()
+                    .skip(pageSize * (page - 1))
+                    .limit(pageSize)
+                    .with(Deadline.mongoMaxTime())
+                    .as(Installation.class);
+
+            List<Installation> installs = new ArrayList<>();
+            iterable.forEach(installs::add);
+
+            return installs;
+        }, () -> explain("{}"));
+    }
+
+    @Override
+    public List<InstallationSummary> listSummaries(int page, int pageSize) {
+        return record("listSummaries", () -> "{} skip " + pageSize * (page - 1) + " limit " + pageSize, () -> {
+            Iterable<InstallationSummary> iterable = installations.find()
+                    .projection(InstallationSummary.MONGO_PROJECTION)
+                    .skip(pageSize * (page - 1))
+                    .limit(pageSize)
+                    .with(Deadline.mongoMaxTime())
+                    .as(InstallationSummary.class);
+
+            List<InstallationSummary> installs = new ArrayList<>();
+            iterable.forEach(installs::add);
+
+            return installs;
+        }, () -> explain("{}"));
+    }
+
+    @Override
+    public List<Installation> list(InstallationFilter filter, int page, int pageSize) {
+        String query = filter.toMongoQuery();
+        Object[] parameters = filter.toMongoParameters();
+        return record("list", () -> query + " " + Arrays.toString(parameters), () -> {
+            Iterable<Installation> iterable = installations.find(query, parameters)
+                    .skip(pageSize * (page - 1))
+                    .limit(pageSize)
+                    .with(Deadline.mongoMaxTime())
+                    .as(Installation.class);
+
+            List<Installation> installs = new ArrayList<>();
+            iterable.forEach(installs::add);
+
+            return installs;
+        }, () -> explain(query, parameters));
+    }
+
+    @Override
+    public List<InstallationSummary> listSummaries(InstallationFilter filter, int page, int pageSize) {
+        String query = filter.toMongoQuery();
+        Object[] parameters = filter.toMongoParameters();
+        return record("listSummaries", () -> query + " " + Arrays.toString(parameters), () -> {
+            Iterable<InstallationSummary> iterable = installations.find(query, parameters)
+                    .projection(InstallationSummary.MONGO_PROJECTION)
+                    .skip(pageSize * (page - 1))
+                    .limit(pageSize)
+                    .with(Deadline.mongoMaxTime())
+                    .as(InstallationSummary.class);
+
+            List<InstallationSummary> installs = new ArrayList<>();
+            iterable.forEach(installs::add);
+
+            return installs;
+        }, () -> explain(query, parameters));
+    }
+
+    @Override
+    public Installation random() {
+        long count = count();
+        if (count == 0) {
+            return null;
+        }
+        int random = new Random().nextInt((int) count);
+        // une seule installation lue : le serveur saute les précédentes sans les transférer
+        return record("random", () -> "{} skip " + random + " limit 1", () -> {
+            Iterator<Installation> iterator = installations.find()
+                    .skip(random)
+                    .limit(1)
+                    .with(Deadline.mongoMaxTime())
+                    .as(Installation.class)
+                    .iterator();
+            return iterator.hasNext() ? iterator.next() : null;
+        }, () -> explain("{}"));
+    }
+
+    @Override
+    public long count() {
+        return record("count", () -> "{}", () -> countWithDeadline("{}"), () -> explain("{}"));
+    }
+
+    @Override
+    public long count(InstallationFilter filter) {
+        String query = filter.toMongoQuery();
+        Object[] parameters = filter.toMongoParameters();
+        return record("count", () -> query + " " + Arrays.toString(parameters),
+                () -> countWithDeadline(query, parameters), () -> explain(query, parameters));
+    }
+
+    /**
+     * Compte les documents d'une requête, dans la limite du temps restant (le <code>count</code> Jongo n'accepte pas
+     * de <code>maxTimeMS</code>, contrairement au curseur du driver).
+     */
+    private long countWithDeadline(String query, Object... parameters) {
+        DBCursor cursor = installations.getDBCollection().find(jongo.createQuery(query, parameters).toDBObject());
+        Deadline.mongoMaxTime().modify(cursor);
+        return cursor.count();
+    }
+
+    @Override
+    public Installation installationWithMaxEquipments() {
+        Iterable<Installation> iterable = aggregate("installationWithMaxEquipments", Installation.class,
+                "{" +
+                    "$project: {" +
+                        "numberOfEquipements: {$size: \"$equipements\"}," +
+                        "nom: 1," +
+                        "equipements: 1" +
+                    "}," +
+                "}",
+                "{" +
+                    "$sort: {" +
+                        "numberOfEquipements: -1" +
+                    "}" +
+                "}",
+                "{" +
+                    "$limit : 1" +
+                "}"
+            );
+
+        return iterable.iterator().next();
+    }
+
+    @Override
+    public List<CountByActivity> countByActivity() {
+        Iterable<CountByActivity> iterable = aggregate("countByActivity", CountByActivity.class,
+            "{" +
+                "$unwind: \"$equipements\"" +
+            "},",
+                "{" +
+                        "$unwind: \"$equipements.activites\"" +
+                        "},",
+            "{" +
+                "$group: {" +
+                    "_id: \"$equipements.activites\"," +
+                    "total: {$sum: 1}" +
+                "}" +
+            "}",
+            "{" +
+                "$project : {" +
+                    "activite: \"$_id\"," +
+                    "total: 1" +
+                "}" +
+            "}"
+        );
+
+        List<CountByActivity> countByActivities = new ArrayList<>();
+        iterable.forEach(countByActivities::add);
+
+        return countByActivities;
+    }
+
+    // see http://docs.mongodb.org/manual/reference/operator/aggregation/group/#group-by-null
+    @Override
+    public double averageEquipmentsPerInstallation() {
+        Iterable<Average> average = aggregate("averageEquipmentsPerInstallation", Average.class,
+                "{\n" +
+                        "    $group : {\n" +
+                        "       _id : null,\n" +
+                        "       average: { $avg: {$size : \"$equipements\" }}\n" +
+                        "    }\n" +
+                        "  }"
+        );
+        return average.iterator().next().getAverage();
+    }
+
+    @Override
+    public List<Installation> search(String searchQuery) {
+        return textSearch("search", TEXT_QUERY, new Object[]{searchQuery}, TEXT_SCORE, 0, SEARCH_LIMIT, Installation.class);
+    }
+
+    @Override
+    public List<InstallationSummary> searchSummaries(String searchQuery) {
+        return textSearch("searchSummaries", TEXT_QUERY, new Object[]{searchQuery}, SUMMARY_TEXT_SCORE, 0, SEARCH_LIMIT,
+                InstallationSummary.class);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * <code>$text</code> ne pouvant être combiné à <code>$near</code>, la zone est filtrée par <code>$geoWithin</code>
+     * et les résultats ne sont triés que par pertinence textuelle (sans la décroissance selon la distance d'Elasticsearch).
+     */
+    @Override
+    public List<Installation> searchNear(String searchQuery, double lat, double lng, double distance, int page, int pageSize) {
+        return textSearch("searchNear", TEXT_NEAR_QUERY, nearParameters(searchQuery, lat, lng, distance), TEXT_SCORE,
+                (page - 1) * pageSize, pageSize, Installation.class);
+    }
+
+    @Override
+    public List<InstallationSummary> searchSummariesNear(String searchQuery, double lat, double lng, double distance, int page, int pageSize) {
+        return textSearch("searchSummariesNear", TEXT_NEAR_QUERY, nearParameters(searchQuery, lat, lng, distance), SUMMARY_TEXT_SCORE,
+                (page - 1) * pageSize, pageSize, InstallationSummary.class);
+    }
+
+    private static Object[] nearParameters(String searchQuery, double lat, double lng, double distance) {
+        return new Object[]{searchQuery, lng, lat, distance / Geo.EARTH_RADIUS_METERS};
+    }
+
+    /**
+     * Recherche full-text sur l'index texte, résultats triés par pertinence.
+     */
+    private <T> List<T> textSearch(String operation, String query, Object[] parameters, String projection, int skip, int limit, Class<T> type) {
+        return record(operation, () -> query + " " + Arrays.toString(parameters), () -> {
+            Iterable<T> iterable = installations.find(query, parameters)
+                    .projection(projection)
+                    .sort(TEXT_SCORE)
+                    .skip(skip)
+                    .limit(limit)
+                    .with(Deadline.mongoMaxTime())
+                    .as(type);
+
+            List<T> results = new ArrayList<>();
+            iterable.forEach(results::add);
+
+            return results;
+        }, () -> explain(query, parameters));
+    }
+
+    @Override
+    public List<Installation> geosearch(double lat, double lng, double distance) {
+        String query = nearQuery(lat, lng, distance);
+        return record("geosearch", () -> query, () -> {
+            Iterable<Installation> iterable = installations.find(query)
+                    .with(Deadline.mongoMaxTime())
+                    .as(Installation.class);
+
+            List<Installation> installs = new ArrayList<>();
+            iterable.forEach(installs::add);
+
+            return installs;
+        }, () -> explain(query));
+    }
+
+    @Override
+    public List<InstallationSummary> geosearchSummaries(double lat, double lng, double distance) {
+        String query = nearQuery(lat, lng, distance);
+        return record("geosearchSummaries", () -> query, () -> {
+            Iterable<InstallationSummary> iterable = installations.find(query)
+                    .projection(InstallationSummary.MONGO_PROJECTION)
+                    .with(Deadline.mongoMaxTime())
+                    .as(InstallationSummary.class);
+
+            List<InstallationSummary> installs = new ArrayList<>();
+            iterable.forEach(installs::add);
+
+            return installs;
+        }, () -> explain(query));
+    }
+
+    /**
+     * Exécute un pipeline d'agrégation, limité au temps restant de la requête en cours.
+     *
+     * @param operation le nom de l'opération (journal des opérations lentes).
+     * @param type      la classe des résultats.
+     * @param pipeline  les étapes du pipeline, au format Jongo.
+     * @return les résultats de l'agrégation.
+     */
+    private <T> List<T> aggregate(String operation, Class<T> type, String... pipeline) {
+        List<DBObject> stages = new ArrayList<>();
+        for (String stage : pipeline) {
+            stages.add(jongo.createQuery(stage).toDBObject());
+        }
+
+        return record(operation, stages::toString, () -> {
+            List<T> results = new ArrayList<>();
+            Cursor cursor = installations.getDBCollection().aggregate(stages, Deadline.mongoAggregationOptions());
+            try {
+                while (cursor.hasNext()) {
+                    results.add(mapper.getUnmarshaller().unmarshall(Bson.createDocument(cursor.next()), type));
+                }
+            } finally {
+                cursor.close();
+            }
+            return results;
+        }, () -> bulkhead.call(() -> installations.getDBCollection().explainAggregate(stages,
+                AggregationOptions.builder().maxTime(EXPLAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS).build())));
+    }
+
+    /**
+     * Appel à MongoDB, dans la limite de la cloison MongoDB et journalisé s'il est lent (cf. {@link SlowQueryLog}).
+     */
+    private <T> T record(String operation, Supplier<String> parameters, Supplier<T> call, Supplier<Object> explain) {
+        return bulkhead.call(() -> slowQueryLog.record(MONGO, operation, parameters, call, explain));
+    }
+
+    /**
+     * Plan d'exécution d'une requête <code>find</code> (journal des opérations lentes), calculé dans la limite
+     * de la cloison MongoDB et d'une durée maximale.
+     */
+    private Object explain(String query, Object... parameters) {
+        return bulkhead.call(() -> installations.getDBCollection().find(jongo.createQuery(query, parameters).toDBObject())
+                .maxTime(EXPLAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .explain());
+    }
+
+    private String nearQuery(double lat, double lng, double distance) {
+        return "{location: { $near :{ $geometry :{ type : \"Point\" , coordinates : ["+lng+", "+lat+"]}, $maxDistance : "+distance+"}} }";
+    }
+}
@@ -0,0 +1,61 @@
+package nosql.workshop.services;
+
+import com.google.inject.Inject;
+import nosql.workshop.model.stats.CubeCell;
+import org.jongo.MongoCollection;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cube de statistiques pré-agrégé par le batch, lu dans MongoDB.
+ * Les requêtes ne portent que sur la collection du cube, jamais sur les installations.
+ */
+public class MongoStatsCubeService implements StatsCubeService {
+
+    /**
+     * Nom de la collection MongoDB du cube.
+     */
+    public static final String COLLECTION_NAME = "stats_cube";
+
+    private final MongoCollection cube;
+    private final Bulkhead bulkhead;
+
+    @Inject
+    public MongoStatsCubeService(MongoDB mongoDB, Bulkheads bulkheads) throws UnknownHostException {
+        this.cube = mongoDB.getJongo().getCollection(COLLECTION_NAME);
+        this.bulkhead = bulkheads.mongo();
+    }
+
+    @Override
+    public List<CubeCell> query(Map<String, String> slices, Collection<String> groupBy) {
+        Map<String, Object> criteria = new LinkedHashMap<>();
+        for (String dimension : new String[]{COMMUNE, FAMILLE, ACTIVITE}) {
+            String value = slices.get(dimension);
+            if (value != null && !value.isEmpty()) {
+                criteria.put(dimension, value);
+            } else if (groupBy.contains(dimension)) {
+                criteria.put(dimension, Collections.singletonMap("$ne", ALL));
+            } else {
+                criteria.put(dimension, ALL);
+            }
+        }
+
+        return bulkhead.call(() -> {
+            Iterable<CubeCell> iterable = cube.find("#", criteria)
+                    .sort("{installations: -1}")
+                    .with(Deadline.mongoMaxTime())
+                    .as(CubeCell.class);
+
+            List<CubeCell> cells = new ArrayList<>();
+            iterable.forEach(cells::add);
+
+            return cells;
+        });
+    }
+}
@@ -0,0 +1,60 @@
+package nosql.workshop.services;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import nosql.workshop.model.suggest.NearestTown;
+
+/**
+ * Géocodage inverse : ville la plus proche d'un point, recherchée en mémoire dans un arbre k-d (cf. {@link TownKdTree}).
+ * <p>
+ * L'arbre est construit à la première demande à partir de l'index 'towns' alimenté par le batch <code>ImportTowns</code>,
+ * puis conservé jusqu'à son invalidation (nouvel import des villes). Le chargement des villes, fait sous verrou,
+ * est borné dans le temps (cf. {@link SearchService#getAllTowns()}) et journalisé s'il est lent (cf. {@link SlowQueryLog}).
+ */
+@Singleton
+public class NearestTownService {
+
+    private final SearchService searchService;
+    private volatile TownKdTree tree;
+
+    @Inject
+    public NearestTownService(SearchService searchService) {
+        this.searchService = searchService;
+    }
+
+    /**
+     * Recherche la ville la plus proche d'un point.
+     *
+     * @param lat latitude du point.
+     * @param lng longitude du point.
+     * @return la ville la plus proche, ou <code>null</code> si aucune ville n'est indexée.
+     */
+    public NearestTown nearest(double lat, double lng) {
+        TownKdTree.Nearest nearest = getTree().nearest(lat, lng);
+        if (nearest == null) {
+            return null;
+        }
+        return new NearestTown(nearest.getTown().getTownName(), nearest.getTown().getLocation(), nearest.getDistance());
+    }
+
+    /**
+     * Oublie l'arbre courant : il sera reconstruit à la prochaine demande.
+     */
+    public synchronized void invalidate() {
+        tree = null;
+    }
+
+    private TownKdTree getTree() {
+        TownKdTree current = tree;
+        if (current == null) {
+            synchronized (this) {
+                current = tree;
+                if (current == null) {
+                    current = new TownKdTree(searchService.getAllTowns());
+                    tree = current;
+                }
+            }
+        }
+        return current;
+    }
+}
@@ -0,0 +1,192 @@
+package nosql.workshop.services;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.mongodb.MongoExecutionTimeoutException;
+import nosql.workshop.model.Installation;
+import nosql.workshop.model.InstallationSummary;
+import nosql.workshop.model.metrics.BackendStats;
+import org.elasticsearch.ElasticsearchTimeoutException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Route les recherches full-text vers Elasticsearch ou vers l'index texte MongoDB selon l'état de chaque backend.
+ * <p>
+ * Elasticsearch est privilégié tant qu'il n'est pas nettement plus lent ou en erreur ; un disjoncteur par backend
+ * bascule les recherches vers l'autre backend en cas d'échecs répétés ou d'appels trop lents. Une requête sur
+ * {@link #PROBE_EVERY} est envoyée au backend non privilégié afin de garder ses mesures à jour.
+ * <p>
+ * En l'absence de recherche full-text MongoDB ({@link TextSearchService}, non liée en mode snapshot), seul Elasticsearch
+ * est utilisé.
+ * <p>
+ * Un appel interrompu par l'échéance de la requête (cf. {@link Deadline}) après plus de {@link #SLOW_CALL_MS} est compté
+ * comme un appel lent en échec ; interrompu plus tôt (échéance déjà presque atteinte), ou refusé par la cloison du
+ * backend, il ne renseigne pas sur l'état du backend et n'est compté ni dans les mesures ni par le disjoncteur.
+ */
+@Singleton
+public class SearchRouter {
+
+    public static final long SLOW_CALL_MS = 1000;
+    public static final int FAILURE_THRESHOLD = 5;
+    public static final long OPEN_DURATION_MS = 30_000;
+    public static final int PROBE_EVERY = 20;
+
+    private static final double LATENCY_FACTOR = 2;
+    private static final double ERROR_RATE_MARGIN = 0.2;
+
+    private final SearchService searchService;
+    private final Backend elasticsearch = new Backend();
+    private final AtomicLong requests = new AtomicLong();
+
+    private TextSearchService textSearchService;
+    private Backend mongo;
+
+    @Inject
+    public SearchRouter(SearchService searchService) {
+        this.searchService = searchService;
+    }
+
+    /**
+     * Active la recherche sur MongoDB ; non appelé si aucune recherche full-text MongoDB n'est liée (mode snapshot).
+     */
+    @Inject(optional = true)
+    void setTextSearchService(TextSearchService textSearchService) {
+        this.textSearchService = textSearchService;
+        this.mongo = new Backend();
+    }
+
+    /**
+     * Recherche des installations sportives sur le backend le plus adapté, avec repli sur l'autre en cas d'échec.
+     *
+     * @param searchQuery la requête de recherche.
+     * @return les résultats correspondant à la requête.
+     */
+    public List<Installation> search(String searchQuery) {
+        return route(() -> searchService.search(searchQuery), () -> textSearchService.search(searchQuery));
+    }
+
+    /**
+     * Recherche des installations sportives en vue allégée, sur le backend le plus adapté.
+     *
+     * @see #search(String)
+     */
+    public List<InstallationSummary> searchSummaries(String searchQuery) {
+        return route(() -> searchService.searchSummaries(searchQuery), () -> textSearchService.searchSummaries(searchQuery));
+    }
+
+    /**
+     * Recherche des installations sportives limitée à une zone géographique, sur le backend le plus adapté.
+     *
+     * @see SearchService#searchNear(String, double, double, double, int, int)
+     */
+    public List<Installation> searchNear(String searchQuery, double lat, double lng, double distance, int page, int pageSize) {
+        return route(() -> searchService.searchNear(searchQuery, lat, lng, distance, page, pageSize),
+                () -> textSearchService.searchNear(searchQuery, lat, lng, distance, page, pageSize));
+    }
+
+    /**
+     * Recherche des installations sportives limitée à une zone géographique, en vue allégée, sur le backend le plus adapté.
+     *
+     * @see SearchService#searchSummariesNear(String, double, double, double, int, int)
+     */
+    public List<InstallationSummary> searchSummariesNear(String searchQuery, double lat, double lng, double distance, int page, int pageSize) {
+        return route(() -> searchService.searchSummariesNear(searchQuery, lat, lng, distance, page, pageSize),
+                () -> textSearchService.searchSummariesNear(searchQuery, lat, lng, distance, page, pageSize));
+    }
+
+    private <T> T route(Supplier<T> elasticsearchCall, Supplier<T> mongoCall) {
+        List<Backend> backends;
+        if (mongo == null) {
+            backends = Collections.singletonList(elasticsearch);
+        } else {
+            backends = preferElasticsearch() ? Arrays.asList(elasticsearch, mongo) : Arrays.asList(mongo, elasticsearch);
+        }
+
+        RuntimeException failure = null;
+        for (Backend backend : backends) {
+            if (!backend.health.getCircuitBreaker().allowRequest()) {
+                continue;
+            }
+            try {
+                return backend.call(backend == elasticsearch ? elasticsearchCall : mongoCall);
+            } catch (DeadlineExceededException e) {
+                // plus de temps disponible pour essayer l'autre backend
+                throw e;
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        throw new IllegalStateException("Aucun backend de recherche disponible");
+    }
+
+    private boolean preferElasticsearch() {
+        BackendHealth es = elasticsearch.health;
+        BackendHealth mg = mongo.health;
+
+        boolean preferred = es.getCalls() == 0 || mg.getCalls() == 0
+                || (es.getAverageLatencyMs() <= mg.getAverageLatencyMs() * LATENCY_FACTOR
+                    && es.getErrorRate() <= mg.getErrorRate() + ERROR_RATE_MARGIN);
+
+        boolean probe = requests.incrementAndGet() % PROBE_EVERY == 0;
+        return probe != preferred;
+    }
+
+    public Map<String, BackendStats> getStats() {
+        Map<String, BackendStats> stats = new LinkedHashMap<>();
+        stats.put("elasticsearch", elasticsearch.health.getStats());
+        if (mongo != null) {
+            stats.put("mongo", mongo.health.getStats());
+        }
+        return stats;
+    }
+
+    private static class Backend {
+
+        private final BackendHealth health = new BackendHealth(new CircuitBreaker(FAILURE_THRESHOLD, OPEN_DURATION_MS));
+
+        private <T> T call(Supplier<T> search) {
+            long start = System.currentTimeMillis();
+            try {
+                T result = search.get();
+                long latency = System.currentTimeMillis() - start;
+                boolean slow = latency > SLOW_CALL_MS;
+                health.record(latency, !slow);
+                if (slow) {
+                    health.getCircuitBreaker().recordFailure();
+                } else {
+                    health.getCircuitBreaker().recordSuccess();
+                }
+                return result;
+            } catch (BulkheadFullException e) {
+                // appel refusé avant d'atteindre le backend : rien à conclure sur son état
+                health.getCircuitBreaker().releaseTrial();
+                throw e;
+            } catch (DeadlineExceededException | ElasticsearchTimeoutException | MongoExecutionTimeoutException e) {
+                long latency = System.currentTimeMillis() - start;
+                if (latency > SLOW_CALL_MS) {
+                    // le backend a consommé l'échéance : appel lent en échec, pour que le disjoncteur bascule sur l'autre backend
+                    health.record(latency, false);
+                    health.getCircuitBreaker().recordFailure();
+                } else {
+                    // échéance déjà (presque) atteinte avant l'appel : rien à conclure sur l'état du backend
+                    health.getCircuitBreaker().releaseTrial();
+                }
+                throw e instanceof DeadlineExceededException ? (DeadlineExceededException) e : new DeadlineExceededException();
+            } catch (RuntimeException e) {
+                health.record(System.currentTimeMillis() - start, false);
+                health.getCircuitBreaker().recordFailure();
+                throw e;
+            }
+        }
+    }
+}
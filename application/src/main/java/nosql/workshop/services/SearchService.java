@@ -4,34 +4,50 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
-import com.mongodb.QueryBuilder;
 import nosql.workshop.model.Installation;
+import nosql.workshop.model.InstallationSummary;
+import nosql.workshop.model.metrics.CoalescingStats;
+import nosql.workshop.model.search.FacetCount;
+import nosql.workshop.model.search.FacetedSearchResult;
+import nosql.workshop.model.suggest.InstallationSuggest;
 import nosql.workshop.model.suggest.TownSuggest;
+import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.action.suggest.SuggestRequestBuilder;
 import org.elasticsearch.action.suggest.SuggestResponse;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.client.transport.TransportClient;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.transport.InetSocketTransportAddress;
+import org.elasticsearch.common.unit.DistanceUnit;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.functionscore.ScoreFunctionBuilders;
 import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
 import org.elasticsearch.search.suggest.completion.CompletionSuggestion;
 import org.elasticsearch.search.suggest.completion.CompletionSuggestionBuilder;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  *
  * Created by Chris on 12/02/15.
  */
 public class SearchService {
+    // alias basculé par le batch MongoDbToElasticsearch vers le dernier index construit
     public static final String INSTALLATIONS_INDEX = "installations";
     public static final String INSTALLATION_TYPE = "installation";
     public static final String TOWNS_INDEX = "towns";
@@ -39,13 +55,51 @@ public class SearchService {
     public static final String ES_TRANSPORT_PORT = "es.transport.port";
     public static final String KEY_LOCATION = "location";
     public static final String FIELD_TOWN_NAME = "townName";
+    public static final String FIELD_COORDINATES = "location.coordinates";
+    public static final String FIELD_NOM_SUGGEST = "nom_suggest";
+    public static final String CONTEXT_COMMUNE = "commune";
+    // catégorie à laquelle toutes les installations sont rattachées (cf. MongoDbToElasticsearch)
+    public static final String ALL_COMMUNES = "_all_";
+    public static final int FACET_SIZE = 20;
     public static final Double[] CARQUEFOU_COORD = new Double[]{-1.49181,47.2975};
     private static final String TOWN_TYPE = "town";
+    private static final int TOWN_SUGGEST_SIZE = 10;
+    private static final int TOWN_SUGGEST_CACHE_SIZE = 2000;
+    private static final int INSTALLATION_SUGGEST_SIZE = 10;
+    private static final int TOWNS_SCROLL_SIZE = 500;
+    private static final int EXPLAIN_HITS = 3;
+    private static final long EXPLAIN_TIMEOUT_MS = 10_000;
+    private static final TimeValue TOWNS_SCROLL_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
+    private static final long TOWNS_SCROLL_TIMEOUT_MS = 10_000;
+
+    // champs non analysés (cf. mappings.txt) sur lesquels sont calculées les facettes
+    private static final Map<String, String> FACET_FIELDS = new LinkedHashMap<>();
+    static {
+        FACET_FIELDS.put("commune", "adresse.commune.raw");
+        FACET_FIELDS.put("famille", "equipements.famille.raw");
+        FACET_FIELDS.put("type", "equipements.type.raw");
+        FACET_FIELDS.put("activite", "equipements.activites.raw");
+    }
     final Client elasticSearchClient;
     final ObjectMapper objectMapper;
+    private final SlowQueryLog slowQueryLog;
+    private final Bulkhead bulkhead;
+
+    // regroupement des requêtes identiques simultanées (typeahead, recherches répétées)
+    private final SingleFlight<String, List<Installation>> searchFlight = new SingleFlight<>();
+    private final SingleFlight<String, List<InstallationSummary>> searchSummariesFlight = new SingleFlight<>();
+    private final SingleFlight<String, FacetedSearchResult> facetedSearchFlight = new SingleFlight<>();
+    private final SingleFlight<String, List<TownSuggest>> suggestFlight = new SingleFlight<>();
+
+    // les villes changent uniquement lors de l'import : les suggestions sont conservées en mémoire
+    private final TownSuggestCache townSuggestCache = new TownSuggestCache(TOWN_SUGGEST_CACHE_SIZE);
 
     @Inject
-    public SearchService(@Named(ES_HOST) String host, @Named(ES_TRANSPORT_PORT) int transportPort) {
+    public SearchService(@Named(ES_HOST) String host, @Named(ES_TRANSPORT_PORT) int transportPort, SlowQueryLog slowQueryLog,
+                         Bulkheads bulkheads) {
+        this.slowQueryLog = slowQueryLog;
+        this.bulkhead = bulkheads.elasticsearch();
+
         // change the name of the cluster
         Settings settings = ImmutableSettings.settingsBuilder().put("cluster.name", "teambs").build();
         elasticSearchClient = new TransportClient(settings).addTransportAddress(new InetSocketTransportAddress(host, transportPort));
@@ -60,15 +114,14 @@ public class SearchService {
      * @return la listes de installations
      */
     public List<Installation> search(String searchQuery) {
+        return searchFlight.execute(String.valueOf(searchQuery), () -> doSearch(searchQuery));
+    }
+
+    private List<Installation> doSearch(String searchQuery) {
         System.out.println("search "+ searchQuery);
 
 
-        SearchResponse response = elasticSearchClient.prepareSearch(INSTALLATIONS_INDEX)
-                .setTypes(INSTALLATION_TYPE)
-                .setSearchType(SearchType.DFS_QUERY_THEN_FETCH)
-                .setQuery(QueryBuilders.queryString("search " + searchQuery))
-                .execute()
-                .actionGet();
+        SearchResponse response = executeSearch("search", prepareInstallationsSearch(searchQuery));
 
         SearchHit[] searchHits = response.getHits().getHits();
 
@@ -87,6 +140,193 @@ public class SearchService {
         return installations;
     }
 
+    /**
+     * Recherche les installations à l'aide d'une requête full-text, en vue allégée.
+     * Seuls les attributs de la vue sont lus depuis la source des documents.
+     *
+     * @param searchQuery la requête
+     * @return la liste des installations (nom, commune et position uniquement)
+     */
+    public List<InstallationSummary> searchSummaries(String searchQuery) {
+        return searchSummariesFlight.execute(String.valueOf(searchQuery), () -> doSearchSummaries(searchQuery));
+    }
+
+    private List<InstallationSummary> doSearchSummaries(String searchQuery) {
+        SearchResponse response = executeSearch("searchSummaries", prepareInstallationsSearch(searchQuery)
+                .setFetchSource(InstallationSummary.SOURCE_FIELDS, null));
+
+        return mapHits(response, InstallationSummary.class);
+    }
+
+    /**
+     * Recherche les installations à l'aide d'une requête full-text, et calcule dans la même requête ES
+     * les facettes (commune, famille, type d'équipement, activité) sur l'ensemble des résultats.
+     *
+     * @param searchQuery la requête
+     * @return les installations trouvées et les facettes, indexées par nom
+     */
+    public FacetedSearchResult searchWithFacets(String searchQuery) {
+        return facetedSearchFlight.execute(String.valueOf(searchQuery), () -> doSearchWithFacets(searchQuery));
+    }
+
+    private FacetedSearchResult doSearchWithFacets(String searchQuery) {
+        SearchRequestBuilder request = prepareInstallationsSearch(searchQuery);
+        for (Map.Entry<String, String> facet : FACET_FIELDS.entrySet()) {
+            request.addAggregation(AggregationBuilders.terms(facet.getKey()).field(facet.getValue()).size(FACET_SIZE));
+        }
+        SearchResponse response = executeSearch("searchWithFacets", request);
+
+        Map<String, List<FacetCount>> facets = new LinkedHashMap<>();
+        for (String facetName : FACET_FIELDS.keySet()) {
+            Terms terms = response.getAggregations().get(facetName);
+            List<FacetCount> counts = new ArrayList<>();
+            for (Terms.Bucket bucket : terms.getBuckets()) {
+                counts.add(new FacetCount(bucket.getKey(), bucket.getDocCount()));
+            }
+            facets.put(facetName, counts);
+        }
+
+        return new FacetedSearchResult(response.getHits().getTotalHits(), mapHits(response, Installation.class), facets);
+    }
+
+    /**
+     * Recherche full-text limitée à une zone géographique, en une seule requête ES.
+     * Le score combine la pertinence textuelle et la proximité du point de départ (décroissance gaussienne).
+     *
+     * @param searchQuery la requête
+     * @param lat         latitude du point de départ
+     * @param lng         longitude du point de départ
+     * @param distance    rayon de recherche, en mètres
+     * @param page        la page à retourner (à partir de 1)
+     * @param pageSize    le nombre d'installations par page
+     * @return les installations de la page demandée
+     */
+    public List<Installation> searchNear(String searchQuery, double lat, double lng, double distance, int page, int pageSize) {
+        SearchResponse response = executeSearch("searchNear", prepareInstallationsSearchNear(searchQuery, lat, lng, distance, page, pageSize));
+
+        return mapHits(response, Installation.class);
+    }
+
+    /**
+     * Recherche full-text limitée à une zone géographique, en vue allégée.
+     *
+     * @see #searchNear(String, double, double, double, int, int)
+     */
+    public List<InstallationSummary> searchSummariesNear(String searchQuery, double lat, double lng, double distance, int page, int pageSize) {
+        SearchResponse response = executeSearch("searchSummariesNear", prepareInstallationsSearchNear(searchQuery, lat, lng, distance, page, pageSize)
+                .setFetchSource(InstallationSummary.SOURCE_FIELDS, null));
+
+        return mapHits(response, InstallationSummary.class);
+    }
+
+    private SearchRequestBuilder prepareInstallationsSearch(String searchQuery) {
+        return elasticSearchClient.prepareSearch(INSTALLATIONS_INDEX)
+                .setTypes(INSTALLATION_TYPE)
+                .setSearchType(SearchType.DFS_QUERY_THEN_FETCH)
+                .setQuery(textQuery(searchQuery));
+    }
+
+    private SearchRequestBuilder prepareInstallationsSearchNear(String searchQuery, double lat, double lng, double distance, int page, int pageSize) {
+        String origin = lat + "," + lng;
+
+        QueryBuilder filteredQuery = QueryBuilders.filteredQuery(
+                textQuery(searchQuery),
+                FilterBuilders.geoDistanceFilter(FIELD_COORDINATES)
+                        .point(lat, lng)
+                        .distance(distance, DistanceUnit.METERS));
+
+        // à mi-rayon, le score textuel est divisé par deux
+        QueryBuilder scoredQuery = QueryBuilders.functionScoreQuery(
+                filteredQuery,
+                ScoreFunctionBuilders.gaussDecayFunction(FIELD_COORDINATES, origin, (distance / 2) + "m"));
+
+        return elasticSearchClient.prepareSearch(INSTALLATIONS_INDEX)
+                .setTypes(INSTALLATION_TYPE)
+                .setSearchType(SearchType.DFS_QUERY_THEN_FETCH)
+                .setQuery(scoredQuery)
+                .setFrom((page - 1) * pageSize)
+                .setSize(pageSize);
+    }
+
+    /**
+     * Exécute une recherche ES, limitée au temps restant de la requête en cours (cf. {@link Deadline}).
+     * Une recherche interrompue par le timeout ES retourne des résultats partiels : elle est traitée comme un dépassement.
+     * Les recherches lentes sont journalisées avec leur requête ES (cf. {@link SlowQueryLog}).
+     *
+     * @param operation le nom de l'opération.
+     * @param request   la recherche à exécuter.
+     * @return la réponse ES.
+     */
+    private SearchResponse executeSearch(String operation, SearchRequestBuilder request) {
+        return record(operation, request::toString, () -> {
+            if (!Deadline.isSet()) {
+                return request.execute().actionGet();
+            }
+
+            long remaining = Deadline.remainingMillis();
+            SearchResponse response = request
+                    .setTimeout(TimeValue.timeValueMillis(remaining))
+                    .execute()
+                    .actionGet(remaining);
+            if (response.isTimedOut()) {
+                throw new DeadlineExceededException();
+            }
+            return response;
+        }, () -> bulkhead.call(() -> explainSearch(request)));
+    }
+
+    /**
+     * Plan d'une recherche lente (journal des opérations lentes) : ES 1.x n'ayant pas de plan d'exécution, la recherche
+     * est rejouée avec <code>explain</code> et le détail du score des premiers résultats est retourné.
+     */
+    private Object explainSearch(SearchRequestBuilder request) {
+        SearchResponse response = request
+                .setExplain(true)
+                .setSize(EXPLAIN_HITS)
+                .execute()
+                .actionGet(EXPLAIN_TIMEOUT_MS);
+
+        Map<String, Object> plan = new LinkedHashMap<>();
+        plan.put("tookMs", response.getTookInMillis());
+        plan.put("totalHits", response.getHits().getTotalHits());
+        List<String> explanations = new ArrayList<>();
+        for (SearchHit hit : response.getHits().getHits()) {
+            explanations.add(hit.getId() + " : " + hit.getExplanation());
+        }
+        plan.put("explanations", explanations);
+        return plan;
+    }
+
+    /**
+     * Appel à Elasticsearch, dans la limite de la cloison Elasticsearch et journalisé s'il est lent (cf. {@link SlowQueryLog}).
+     */
+    private <T> T record(String operation, Supplier<String> parameters, Supplier<T> call, Supplier<Object> explain) {
+        return bulkhead.call(() -> slowQueryLog.record("elasticsearch", operation, parameters, call, explain));
+    }
+
+    private QueryBuilder textQuery(String searchQuery) {
+        return QueryBuilders.queryString("search " + searchQuery);
+    }
+
+    /**
+     * Transforme les résultats de recherche ES en objets du type demandé.
+     *
+     * @param response la réponse ES.
+     * @param type     le type des objets.
+     * @return les objets, dans l'ordre des résultats.
+     */
+    private <T> List<T> mapHits(SearchResponse response, Class<T> type) {
+        List<T> results = new ArrayList<>();
+        for (SearchHit searchHit : response.getHits().getHits()) {
+            try {
+                results.add(objectMapper.readValue(searchHit.getSourceAsString(), type));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return results;
+    }
+
     /**
      * Transforme un résultat de recherche ES en objet installation.
      *
@@ -102,13 +342,38 @@ public class SearchService {
     }
 
     public List<TownSuggest> suggestTownName(String townName){
+        List<TownSuggest> cached = townSuggestCache.get(townName);
+        if (cached != null) {
+            return cached;
+        }
+        return suggestFlight.execute(String.valueOf(townName), () -> doSuggestTownName(townName));
+    }
+
+    /**
+     * Vide le cache des suggestions de villes (à appeler après un import des villes).
+     */
+    public void invalidateTownSuggestCache() {
+        townSuggestCache.invalidate();
+    }
+
+    public Map<String, Long> getTownSuggestCacheStats() {
+        return townSuggestCache.getStats();
+    }
+
+    private List<TownSuggest> doSuggestTownName(String townName){
+        // lue avant l'appel : un import des villes pendant l'appel empêche l'écriture de ce résultat dans le cache
+        long cacheGeneration = townSuggestCache.generation();
+
         // create the response
-        SuggestResponse suggestResponse =
+        SuggestRequestBuilder suggestRequest =
                 elasticSearchClient.prepareSuggest(TOWNS_INDEX).addSuggestion(
                         new CompletionSuggestionBuilder("town_suggest")
                                 .field(FIELD_TOWN_NAME)
                                 .text(townName)
-                ).execute().actionGet();
+                                .size(TOWN_SUGGEST_SIZE)
+                );
+        // les suggesters n'ont ni plan d'exécution ni explain : seuls les paramètres sont journalisés
+        SuggestResponse suggestResponse = record("suggestTownName", () -> townName, () -> executeSuggest(suggestRequest), null);
 
         // get the suggestion
         CompletionSuggestion compSuggestion = suggestResponse.getSuggest().getSuggestion("town_suggest");
@@ -121,18 +386,116 @@ public class SearchService {
             townSuggests.add(new TownSuggest(townNameOption, Arrays.asList(getTownLocation(townNameOption))));
         }
 
+        townSuggestCache.put(townName, townSuggests, cacheGeneration);
+
         return townSuggests;
     }
 
+    /**
+     * Suggère des installations dont un mot du nom commence par le texte saisi (suggester de complétion ES),
+     * éventuellement limitées à une commune.
+     *
+     * @param text    le texte saisi.
+     * @param commune la commune, ou <code>null</code> pour toutes les communes.
+     * @return les numéros et noms des installations suggérées.
+     */
+    public List<InstallationSuggest> suggestInstallations(String text, String commune) {
+        String category = (commune == null || commune.trim().isEmpty()) ? ALL_COMMUNES : commune.trim().toLowerCase(Locale.FRENCH);
+
+        SuggestRequestBuilder suggestRequest =
+                elasticSearchClient.prepareSuggest(INSTALLATIONS_INDEX).addSuggestion(
+                        new CompletionSuggestionBuilder("installation_suggest")
+                                .field(FIELD_NOM_SUGGEST)
+                                .text(text)
+                                .size(INSTALLATION_SUGGEST_SIZE)
+                                .addCategory(CONTEXT_COMMUNE, category)
+                );
+        SuggestResponse suggestResponse = record("suggestInstallations", () -> text + " [" + category + "]",
+                () -> executeSuggest(suggestRequest), null);
+
+        List<InstallationSuggest> suggestions = new ArrayList<>();
+        CompletionSuggestion compSuggestion = suggestResponse.getSuggest().getSuggestion("installation_suggest");
+        for (CompletionSuggestion.Entry.Option option : compSuggestion.getEntries().get(0).getOptions()) {
+            Map<String, Object> payload = option.getPayloadAsMap();
+            suggestions.add(new InstallationSuggest((String) payload.get("numero"), (String) payload.get("nom")));
+        }
+        return suggestions;
+    }
+
+    private static SuggestResponse executeSuggest(SuggestRequestBuilder request) {
+        return Deadline.isSet() ? request.execute().actionGet(Deadline.remainingMillis()) : request.execute().actionGet();
+    }
+
+    /**
+     * Retourne les statistiques de regroupement des requêtes, par type d'appel.
+     *
+     * @return les statistiques indexées par nom d'appel.
+     */
+    public Map<String, CoalescingStats> getCoalescingStats() {
+        Map<String, CoalescingStats> stats = new LinkedHashMap<>();
+        stats.put("search", searchFlight.getStats());
+        stats.put("searchSummaries", searchSummariesFlight.getStats());
+        stats.put("facetedSearch", facetedSearchFlight.getStats());
+        stats.put("suggestTownName", suggestFlight.getStats());
+        return stats;
+    }
+
+    /**
+     * Charge l'ensemble des villes de l'index 'towns' (parcours scan/scroll), pour l'index des villes les plus proches.
+     * <p>
+     * Chaque page est attendue au plus {@link #TOWNS_SCROLL_TIMEOUT_MS} ms, et au plus jusqu'à l'échéance de la requête
+     * en cours ; le scroll est libéré en fin de parcours, y compris en cas d'échec.
+     *
+     * @return les villes et leurs coordonnées [longitude, latitude].
+     */
+    public List<TownSuggest> getAllTowns() {
+        return record("getAllTowns", () -> TOWNS_INDEX + "/" + TOWN_TYPE + " scan", this::scanTowns, null);
+    }
+
+    private List<TownSuggest> scanTowns() {
+        List<TownSuggest> towns = new ArrayList<>();
+        SearchResponse response = elasticSearchClient.prepareSearch(TOWNS_INDEX)
+                .setTypes(TOWN_TYPE)
+                .setSearchType(SearchType.SCAN)
+                .setScroll(TOWNS_SCROLL_KEEP_ALIVE)
+                .setSize(TOWNS_SCROLL_SIZE)
+                .execute().actionGet(scrollTimeoutMillis());
+        String scrollId = response.getScrollId();
+        try {
+            while (true) {
+                response = elasticSearchClient.prepareSearchScroll(scrollId)
+                        .setScroll(TOWNS_SCROLL_KEEP_ALIVE)
+                        .execute().actionGet(scrollTimeoutMillis());
+                scrollId = response.getScrollId();
+                if (response.getHits().getHits().length == 0) {
+                    return towns;
+                }
+                for (SearchHit hit : response.getHits().getHits()) {
+                    Map<String, Object> source = hit.getSource();
+                    List<?> location = (List<?>) source.get(KEY_LOCATION);
+                    if (source.get(FIELD_TOWN_NAME) != null && location != null && location.size() == 2) {
+                        towns.add(new TownSuggest(source.get(FIELD_TOWN_NAME).toString(), Arrays.asList(
+                                ((Number) location.get(0)).doubleValue(), ((Number) location.get(1)).doubleValue())));
+                    }
+                }
+            }
+        } finally {
+            // libération sans attente : le scroll expire de toute façon après TOWNS_SCROLL_KEEP_ALIVE
+            elasticSearchClient.prepareClearScroll().addScrollId(scrollId).execute();
+        }
+    }
+
+    private static long scrollTimeoutMillis() {
+        return Deadline.isSet() ? Math.min(Deadline.remainingMillis(), TOWNS_SCROLL_TIMEOUT_MS) : TOWNS_SCROLL_TIMEOUT_MS;
+    }
+
     public Double[] getTownLocation(String townName) {
         Double[] coordinates = new Double[2];
 
-        SearchResponse response = elasticSearchClient.prepareSearch(TOWNS_INDEX)
+        SearchResponse response = executeSearch("getTownLocation", elasticSearchClient.prepareSearch(TOWNS_INDEX)
                 .setTypes(TOWN_TYPE)
                 .setSearchType(SearchType.QUERY_AND_FETCH)
-                .setQuery(QueryBuilders.queryString(FIELD_TOWN_NAME + ":" + townName)) // Query
-                .execute()
-                .actionGet();
+                .setQuery(QueryBuilders.queryString(FIELD_TOWN_NAME + ":" + townName))); // Query
         SearchHit[] searchHits = response.getHits().getHits();
 
         if(searchHits.length>0){
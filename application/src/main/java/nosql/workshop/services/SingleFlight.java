@@ -0,0 +1,85 @@
+package nosql.workshop.services;
+
+import nosql.workshop.model.metrics.CoalescingStats;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Regroupe les appels identiques simultanés : tant qu'un appel est en cours pour une clé,
+ * les appels suivants pour la même clé attendent son résultat au lieu de solliciter à nouveau le backend.
+ *
+ * @param <K> le type de la clé identifiant un appel.
+ * @param <V> le type du résultat.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong backendCalls = new AtomicLong();
+
+    /**
+     * Exécute l'appel, ou partage le résultat d'un appel identique déjà en cours.
+     *
+     * @param key  la clé identifiant l'appel.
+     * @param call l'appel au backend.
+     * @return le résultat de l'appel.
+     */
+    public V execute(K key, Supplier<V> call) {
+        requests.incrementAndGet();
+
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            return await(existing);
+        }
+
+        backendCalls.incrementAndGet();
+        try {
+            V result = call.get();
+            future.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            // toute erreur doit terminer l'appel partagé, sans quoi les appels en attente ne seraient jamais libérés
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * Attend le résultat de l'appel en cours, au plus jusqu'à l'échéance de la requête courante.
+     */
+    private V await(CompletableFuture<V> future) {
+        try {
+            if (!Deadline.isSet()) {
+                return future.get();
+            }
+            return future.get(Deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new DeadlineExceededException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public CoalescingStats getStats() {
+        return new CoalescingStats(requests.get(), backendCalls.get());
+    }
+}
@@ -0,0 +1,111 @@
+package nosql.workshop.services;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import nosql.workshop.model.metrics.SlowOperation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Journal des opérations lentes (MongoDB et Elasticsearch).
+ * <p>
+ * Les opérations dépassant le seuil sont conservées dans un tampon circulaire borné, avec leurs paramètres
+ * et leur durée. Pour une opération lente sur {@link #EXPLAIN_SAMPLE_RATE}, le plan d'exécution est
+ * capturé en tâche de fond, afin de ne pas rallonger la requête déjà lente. Au plus {@link #EXPLAIN_QUEUE_CAPACITY}
+ * plans sont en attente de calcul : au-delà, les nouveaux plans ne sont pas calculés.
+ */
+@Singleton
+public class SlowQueryLog {
+
+    public static final String THRESHOLD_MS = "slowquery.thresholdMs";
+    public static final int CAPACITY = 100;
+    public static final int EXPLAIN_SAMPLE_RATE = 5;
+    public static final int EXPLAIN_QUEUE_CAPACITY = 10;
+
+    private final long thresholdMillis;
+    private final Deque<SlowOperation> operations = new ArrayDeque<>(CAPACITY);
+    private final ExecutorService explainExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(EXPLAIN_QUEUE_CAPACITY), runnable -> {
+                Thread thread = new Thread(runnable, "slow-query-explain");
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.DiscardPolicy());
+
+    private long slowCount;
+
+    @Inject
+    public SlowQueryLog(@Named(THRESHOLD_MS) long thresholdMillis) {
+        this.thresholdMillis = thresholdMillis;
+    }
+
+    /**
+     * Exécute une opération en mesurant sa durée ; elle est journalisée si elle dépasse le seuil.
+     *
+     * @param backend    le backend sollicité ("mongo" ou "elasticsearch").
+     * @param operation  le nom de l'opération.
+     * @param parameters la requête et ses paramètres, évalués uniquement si l'opération est lente.
+     * @param call       l'opération.
+     * @param explain    le calcul du plan d'exécution, ou <code>null</code> si non disponible ; ce calcul doit
+     *                   être borné en durée et respecter la cloison du backend.
+     * @return le résultat de l'opération.
+     */
+    public <T> T record(String backend, String operation, Supplier<String> parameters, Supplier<T> call, Supplier<Object> explain) {
+        long start = System.currentTimeMillis();
+        String error = null;
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            error = e.getClass().getSimpleName() + ": " + e.getMessage();
+            throw e;
+        } finally {
+            long duration = System.currentTimeMillis() - start;
+            if (duration >= thresholdMillis) {
+                add(new SlowOperation(start, backend, operation, parameters.get(), duration, error), explain);
+            }
+        }
+    }
+
+    private void add(SlowOperation slowOperation, Supplier<Object> explain) {
+        boolean sampled;
+        synchronized (this) {
+            if (operations.size() == CAPACITY) {
+                operations.removeFirst();
+            }
+            operations.addLast(slowOperation);
+            sampled = slowCount++ % EXPLAIN_SAMPLE_RATE == 0;
+        }
+
+        if (sampled && explain != null) {
+            explainExecutor.execute(() -> {
+                try {
+                    slowOperation.setPlan(explain.get());
+                } catch (RuntimeException e) {
+                    slowOperation.setPlan("explain failed: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Retourne les opérations lentes journalisées, de la plus récente à la plus ancienne.
+     */
+    public synchronized List<SlowOperation> getOperations() {
+        List<SlowOperation> result = new ArrayList<>(operations);
+        Collections.reverse(result);
+        return result;
+    }
+
+    public synchronized void clear() {
+        operations.clear();
+    }
+}
@@ -0,0 +1,245 @@
+package nosql.workshop.services;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import nosql.workshop.model.Equipement;
+import nosql.workshop.model.Geo;
+import nosql.workshop.model.Installation;
+import nosql.workshop.model.InstallationFilter;
+import nosql.workshop.model.InstallationSummary;
+import nosql.workshop.model.metrics.IndexCheck;
+import nosql.workshop.model.stats.CountByActivity;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Service des installations en lecture seule, servi depuis un snapshot binaire projeté en mémoire, sans MongoDB.
+ * <p>
+ * Ce service ne propose pas de recherche full-text ({@link TextSearchService}) : elle reste assurée par Elasticsearch
+ * seul (cf. {@link SearchRouter}).
+ */
+@Singleton
+public class SnapshotInstallationService implements InstallationService {
+
+    public static final String SNAPSHOT_FILE = "snapshot.file";
+
+    private final InstallationSnapshot snapshot;
+    private final Random random = new Random();
+
+    // statistiques calculées une seule fois, le snapshot étant immuable
+    private List<CountByActivity> countByActivity;
+    private Installation installationWithMaxEquipments;
+    private double averageEquipmentsPerInstallation;
+
+    @Inject
+    public SnapshotInstallationService(@Named(SNAPSHOT_FILE) String snapshotFile) throws IOException {
+        this.snapshot = new InstallationSnapshot(Paths.get(snapshotFile));
+    }
+
+    @Override
+    public void createIndexes() {
+        // aucun index à créer : le snapshot est indexé lors de son chargement
+    }
+
+    @Override
+    public Installation get(String numero) {
+        int position = snapshot.indexOf(numero);
+        return position < 0 ? null : snapshot.read(position, Installation.class);
+    }
+
+    @Override
+    public Map<String, Installation> getAll(List<String> numeros) {
+        Map<String, Installation> installs = new HashMap<>();
+        for (String numero : numeros) {
+            Installation installation = get(numero);
+            if (installation != null) {
+                installs.put(numero, installation);
+            }
+        }
+        return installs;
+    }
+
+    @Override
+    public List<Installation> list(int page, int pageSize) {
+        return readPage(page, pageSize, Installation.class);
+    }
+
+    @Override
+    public List<InstallationSummary> listSummaries(int page, int pageSize) {
+        return readPage(page, pageSize, InstallationSummary.class);
+    }
+
+    private <T> List<T> readPage(int page, int pageSize, Class<T> type) {
+        List<T> installs = new ArrayList<>();
+        for (int i = pageSize * (page - 1); i < Math.min(pageSize * page, snapshot.size()); i++) {
+            installs.add(snapshot.read(i, type));
+        }
+        return installs;
+    }
+
+    @Override
+    public List<Installation> list(InstallationFilter filter, int page, int pageSize) {
+        return readFilteredPage(filter, page, pageSize, Installation.class);
+    }
+
+    @Override
+    public List<InstallationSummary> listSummaries(InstallationFilter filter, int page, int pageSize) {
+        return readFilteredPage(filter, page, pageSize, InstallationSummary.class);
+    }
+
+    private <T> List<T> readFilteredPage(InstallationFilter filter, int page, int pageSize, Class<T> type) {
+        List<T> installs = new ArrayList<>();
+        int skip = pageSize * (page - 1);
+        for (int i = 0; i < snapshot.size() && installs.size() < pageSize; i++) {
+            if (!withinDistance(filter, i)) {
+                continue;
+            }
+            Installation installation = snapshot.read(i, Installation.class);
+            if (filter.matches(installation) && skip-- <= 0) {
+                installs.add(type.isInstance(installation) ? type.cast(installation) : snapshot.read(i, type));
+            }
+        }
+        return installs;
+    }
+
+    @Override
+    public Installation random() {
+        return snapshot.read(random.nextInt(snapshot.size()), Installation.class);
+    }
+
+    @Override
+    public long count() {
+        return snapshot.size();
+    }
+
+    @Override
+    public long count(InstallationFilter filter) {
+        long count = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (withinDistance(filter, i) && filter.matches(snapshot.read(i, Installation.class))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Critère géographique du filtre, évalué sur les coordonnées de l'index du snapshot (sans décoder le document).
+     */
+    private boolean withinDistance(InstallationFilter filter, int position) {
+        return !filter.isNear()
+                || Geo.haversine(filter.getLat(), filter.getLng(), snapshot.getLatitude(position), snapshot.getLongitude(position)) <= filter.getDistance();
+    }
+
+    @Override
+    public List<IndexCheck> checkIndexes() {
+        // aucun index MongoDB : les filtres sont évalués par parcours du snapshot
+        return new ArrayList<>();
+    }
+
+    @Override
+    public Installation installationWithMaxEquipments() {
+        computeStats();
+        return installationWithMaxEquipments;
+    }
+
+    @Override
+    public List<CountByActivity> countByActivity() {
+        computeStats();
+        return countByActivity;
+    }
+
+    @Override
+    public double averageEquipmentsPerInstallation() {
+        computeStats();
+        return averageEquipmentsPerInstallation;
+    }
+
+    private synchronized void computeStats() {
+        if (countByActivity != null) {
+            return;
+        }
+
+        Map<String, Long> totals = new HashMap<>();
+        long equipementsCount = 0;
+        int maxEquipements = -1;
+        for (int i = 0; i < snapshot.size(); i++) {
+            Installation installation = snapshot.read(i, Installation.class);
+            List<Equipement> equipements = installation.getEquipements();
+            int size = equipements == null ? 0 : equipements.size();
+            equipementsCount += size;
+            if (size > maxEquipements) {
+                maxEquipements = size;
+                installationWithMaxEquipments = installation;
+            }
+            if (equipements != null) {
+                for (Equipement equipement : equipements) {
+                    if (equipement.getActivites() != null) {
+                        equipement.getActivites().forEach(activite -> totals.merge(activite, 1L, Long::sum));
+                    }
+                }
+            }
+        }
+
+        List<CountByActivity> counts = new ArrayList<>();
+        totals.forEach((activite, total) -> {
+            CountByActivity count = new CountByActivity();
+            count.setActivite(activite);
+            count.setTotal(total);
+            counts.add(count);
+        });
+        averageEquipmentsPerInstallation = snapshot.size() == 0 ? 0 : (double) equipementsCount / snapshot.size();
+        countByActivity = counts;
+    }
+
+    /**
+     * Parcourt toutes les installations du snapshot (calculs en mémoire, cf. {@link SnapshotStatsCubeService}).
+     *
+     * @param action le traitement d'une installation.
+     */
+    public void forEach(Consumer<Installation> action) {
+        for (int i = 0; i < snapshot.size(); i++) {
+            action.accept(snapshot.read(i, Installation.class));
+        }
+    }
+
+    @Override
+    public List<Installation> geosearch(double lat, double lng, double distance) {
+        List<Installation> installs = new ArrayList<>();
+        near(lat, lng, distance).forEach(position -> installs.add(snapshot.read(position, Installation.class)));
+        return installs;
+    }
+
+    @Override
+    public List<InstallationSummary> geosearchSummaries(double lat, double lng, double distance) {
+        List<InstallationSummary> installs = new ArrayList<>();
+        near(lat, lng, distance).forEach(position -> installs.add(snapshot.read(position, InstallationSummary.class)));
+        return installs;
+    }
+
+    /**
+     * Positions des installations situées à moins de <code>distance</code> mètres, de la plus proche à la plus éloignée
+     * (même ordre que <code>$near</code>).
+     */
+    private List<Integer> near(double lat, double lng, double distance) {
+        List<Integer> positions = new ArrayList<>();
+        double[] distances = new double[snapshot.size()];
+        for (int i = 0; i < snapshot.size(); i++) {
+            distances[i] = Geo.haversine(lat, lng, snapshot.getLatitude(i), snapshot.getLongitude(i));
+            if (distances[i] <= distance) {
+                positions.add(i);
+            }
+        }
+        positions.sort(Comparator.comparingDouble(position -> distances[position]));
+        return positions;
+    }
+}
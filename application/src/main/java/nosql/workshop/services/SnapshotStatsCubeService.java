@@ -0,0 +1,141 @@
+package nosql.workshop.services;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import nosql.workshop.model.Equipement;
+import nosql.workshop.model.Installation;
+import nosql.workshop.model.stats.CubeCell;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cube de statistiques calculé en mémoire à partir du snapshot des installations, sans MongoDB.
+ * <p>
+ * Le cube est calculé à la première requête, selon les mêmes règles que le batch <code>StatsCubeBuilder</code> :
+ * comptes distincts pour chacun des 2^3 niveaux d'agrégation, une installation sans équipement (ou un équipement
+ * sans activité) étant rattachée à la famille (ou à l'activité) {@link #NONE}.
+ */
+@Singleton
+public class SnapshotStatsCubeService implements StatsCubeService {
+
+    private static final String[] DIMENSIONS = {COMMUNE, FAMILLE, ACTIVITE};
+
+    private final SnapshotInstallationService installationService;
+
+    // calculé une seule fois, le snapshot étant immuable
+    private List<CubeCell> cells;
+
+    @Inject
+    public SnapshotStatsCubeService(SnapshotInstallationService installationService) {
+        this.installationService = installationService;
+    }
+
+    @Override
+    public List<CubeCell> query(Map<String, String> slices, Collection<String> groupBy) {
+        List<CubeCell> result = new ArrayList<>();
+        for (CubeCell cell : getCells()) {
+            if (matches(cell, slices, groupBy)) {
+                result.add(cell);
+            }
+        }
+        result.sort(Comparator.comparingLong(CubeCell::getInstallations).reversed());
+        return result;
+    }
+
+    private static boolean matches(CubeCell cell, Map<String, String> slices, Collection<String> groupBy) {
+        for (String dimension : DIMENSIONS) {
+            String cellValue = valueOf(cell, dimension);
+            String value = slices.get(dimension);
+            if (value != null && !value.isEmpty()) {
+                if (!value.equals(cellValue)) {
+                    return false;
+                }
+            } else if (groupBy.contains(dimension) == ALL.equals(cellValue)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String valueOf(CubeCell cell, String dimension) {
+        switch (dimension) {
+            case COMMUNE:
+                return cell.getCommune();
+            case FAMILLE:
+                return cell.getFamille();
+            default:
+                return cell.getActivite();
+        }
+    }
+
+    private synchronized List<CubeCell> getCells() {
+        if (cells == null) {
+            cells = computeCells();
+        }
+        return cells;
+    }
+
+    private List<CubeCell> computeCells() {
+        Map<List<String>, Set<String>> installations = new HashMap<>();
+        Map<List<String>, Set<String>> equipements = new HashMap<>();
+
+        installationService.forEach(installation -> {
+            String commune = installation.getAdresse() != null && installation.getAdresse().getCommune() != null
+                    ? installation.getAdresse().getCommune() : "";
+            List<Equipement> installationEquipements = installation.getEquipements();
+            if (installationEquipements == null || installationEquipements.isEmpty()) {
+                addToCells(installations, equipements, installation, null, commune, NONE, NONE);
+                return;
+            }
+            for (Equipement equipement : installationEquipements) {
+                String famille = equipement.getFamille() != null ? equipement.getFamille() : "";
+                List<String> activites = equipement.getActivites() == null || equipement.getActivites().isEmpty()
+                        ? Collections.singletonList(NONE) : equipement.getActivites();
+                for (String activite : activites) {
+                    addToCells(installations, equipements, installation, equipement.getNumero(), commune, famille, activite);
+                }
+            }
+        });
+
+        List<CubeCell> result = new ArrayList<>();
+        installations.forEach((key, numeros) -> {
+            CubeCell cell = new CubeCell();
+            cell.setCommune(key.get(0));
+            cell.setFamille(key.get(1));
+            cell.setActivite(key.get(2));
+            cell.setInstallations(numeros.size());
+            cell.setEquipements(equipements.get(key).size());
+            cell.setAverageEquipementsPerInstallation((double) cell.getEquipements() / cell.getInstallations());
+            result.add(cell);
+        });
+        return result;
+    }
+
+    /**
+     * Rattache une installation (et son équipement) à la cellule de chaque niveau d'agrégation.
+     */
+    private static void addToCells(Map<List<String>, Set<String>> installations, Map<List<String>, Set<String>> equipements,
+                                   Installation installation, String equipement, String... values) {
+        for (int groupingSet = 0; groupingSet < (1 << DIMENSIONS.length); groupingSet++) {
+            String[] key = new String[DIMENSIONS.length];
+            for (int i = 0; i < DIMENSIONS.length; i++) {
+                key[i] = (groupingSet & (1 << i)) != 0 ? values[i] : ALL;
+            }
+            List<String> cell = Arrays.asList(key);
+            installations.computeIfAbsent(cell, k -> new HashSet<>()).add(installation.getNumero());
+            Set<String> cellEquipements = equipements.computeIfAbsent(cell, k -> new HashSet<>());
+            if (equipement != null) {
+                cellEquipements.add(equipement);
+            }
+        }
+    }
+}
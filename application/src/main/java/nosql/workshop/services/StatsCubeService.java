@@ -0,0 +1,42 @@
+package nosql.workshop.services;
+
+import nosql.workshop.model.stats.CubeCell;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Service d'interrogation du cube de statistiques (commune x famille x activité).
+ * <p>
+ * Implémentations : {@link MongoStatsCubeService} (cube pré-agrégé par le batch) et {@link SnapshotStatsCubeService}
+ * (cube calculé en mémoire depuis le snapshot, sans MongoDB).
+ */
+public interface StatsCubeService {
+
+    /**
+     * Valeur d'une dimension agrégée.
+     */
+    String ALL = "*";
+
+    /**
+     * Famille ou activité des installations sans équipement et des équipements sans activité.
+     */
+    String NONE = "Aucune";
+
+    String COMMUNE = "commune";
+    String FAMILLE = "famille";
+    String ACTIVITE = "activite";
+
+    /**
+     * Interroge le cube.
+     * <p>
+     * Une dimension dont la valeur est fournie est filtrée sur cette valeur (slice) ; une dimension présente
+     * dans <code>groupBy</code> est détaillée ; les autres dimensions sont agrégées (roll-up).
+     *
+     * @param slices  les valeurs imposées, par dimension.
+     * @param groupBy les dimensions à détailler.
+     * @return les cellules correspondantes.
+     */
+    List<CubeCell> query(Map<String, String> slices, Collection<String> groupBy);
+}
@@ -0,0 +1,50 @@
+package nosql.workshop.services;
+
+import nosql.workshop.model.Installation;
+import nosql.workshop.model.InstallationSummary;
+
+import java.util.List;
+
+/**
+ * Recherche full-text des installations sportives, en complément d'Elasticsearch (cf. {@link SearchRouter}).
+ * <p>
+ * Implémentation : {@link MongoInstallationService} (index texte MongoDB). Le mode snapshot n'en propose pas.
+ */
+public interface TextSearchService {
+
+    /**
+     * Recherche des installations sportives.
+     *
+     * @param searchQuery la requête de recherche.
+     * @return les résultats correspondant à la requête.
+     */
+    List<Installation> search(String searchQuery);
+
+    /**
+     * Recherche des installations sportives, en vue allégée.
+     *
+     * @param searchQuery la requête de recherche.
+     * @return les résultats correspondant à la requête (nom, commune et position uniquement).
+     */
+    List<InstallationSummary> searchSummaries(String searchQuery);
+
+    /**
+     * Recherche des installations sportives, limitée à une zone géographique.
+     *
+     * @param searchQuery la requête de recherche.
+     * @param lat         latitude du point de départ.
+     * @param lng         longitude du point de départ.
+     * @param distance    rayon de recherche, en mètres.
+     * @param page        la page à retourner (à partir de 1).
+     * @param pageSize    le nombre d'installations par page.
+     * @return les installations de la page demandée.
+     */
+    List<Installation> searchNear(String searchQuery, double lat, double lng, double distance, int page, int pageSize);
+
+    /**
+     * Recherche des installations sportives, limitée à une zone géographique, en vue allégée.
+     *
+     * @see #searchNear(String, double, double, double, int, int)
+     */
+    List<InstallationSummary> searchSummariesNear(String searchQuery, double lat, double lng, double distance, int page, int pageSize);
+}
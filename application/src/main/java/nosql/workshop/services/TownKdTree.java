@@ -0,0 +1,153 @@
+package nosql.workshop.services;
+
+import nosql.workshop.model.Geo;
+import nosql.workshop.model.suggest.TownSuggest;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Arbre k-d des villes, pour la recherche de la ville la plus proche d'un point.
+ * <p>
+ * Les coordonnées sont projetées sur la sphère unité (x, y, z) : la distance euclidienne (corde) y croît avec
+ * la distance orthodromique, ce qui rend la recherche exacte, y compris près des pôles et de l'antiméridien.
+ * L'arbre est implicite : pour chaque sous-tableau, la ville médiane (selon l'axe du niveau) est au milieu.
+ * Il est immuable une fois construit.
+ */
+public class TownKdTree {
+
+    private static final int DIMENSIONS = 3;
+
+    private final Point[] points;
+
+    /**
+     * @param towns les villes, avec leurs coordonnées [longitude, latitude].
+     */
+    public TownKdTree(List<TownSuggest> towns) {
+        points = new Point[towns.size()];
+        for (int i = 0; i < points.length; i++) {
+            TownSuggest town = towns.get(i);
+            points[i] = new Point(town, toUnitVector(town.getLocation()[1], town.getLocation()[0]));
+        }
+        build(0, points.length, 0);
+    }
+
+    private void build(int from, int to, int depth) {
+        if (to - from <= 1) {
+            return;
+        }
+        int axis = depth % DIMENSIONS;
+        Arrays.sort(points, from, to, Comparator.comparingDouble(point -> point.vector[axis]));
+        int median = (from + to) >>> 1;
+        build(from, median, depth + 1);
+        build(median + 1, to, depth + 1);
+    }
+
+    public int size() {
+        return points.length;
+    }
+
+    /**
+     * Recherche la ville la plus proche d'un point.
+     *
+     * @param lat latitude du point.
+     * @param lng longitude du point.
+     * @return la ville la plus proche et sa distance en mètres, ou <code>null</code> si l'arbre est vide.
+     */
+    public Nearest nearest(double lat, double lng) {
+        if (points.length == 0) {
+            return null;
+        }
+        Search search = new Search(toUnitVector(lat, lng));
+        search.visit(0, points.length, 0);
+        double chord = Math.sqrt(search.bestDistance);
+        return new Nearest(points[search.best].town, 2 * Geo.EARTH_RADIUS_METERS * Math.asin(Math.min(1, chord / 2)));
+    }
+
+    private static double[] toUnitVector(double lat, double lng) {
+        double phi = Math.toRadians(lat);
+        double lambda = Math.toRadians(lng);
+        return new double[]{Math.cos(phi) * Math.cos(lambda), Math.cos(phi) * Math.sin(lambda), Math.sin(phi)};
+    }
+
+    /**
+     * Parcours de l'arbre pour un point donné : meilleur candidat et carré de sa distance.
+     */
+    private class Search {
+
+        private final double[] target;
+        private int best = -1;
+        private double bestDistance = Double.POSITIVE_INFINITY;
+
+        private Search(double[] target) {
+            this.target = target;
+        }
+
+        private void visit(int from, int to, int depth) {
+            if (from >= to) {
+                return;
+            }
+            int median = (from + to) >>> 1;
+            double[] vector = points[median].vector;
+
+            double distance = 0;
+            for (int i = 0; i < DIMENSIONS; i++) {
+                double delta = target[i] - vector[i];
+                distance += delta * delta;
+            }
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = median;
+            }
+
+            // sous-arbre du côté du point d'abord, l'autre seulement si le plan de coupe est plus proche que le meilleur candidat
+            int axis = depth % DIMENSIONS;
+            double delta = target[axis] - vector[axis];
+            if (delta < 0) {
+                visit(from, median, depth + 1);
+                if (delta * delta < bestDistance) {
+                    visit(median + 1, to, depth + 1);
+                }
+            } else {
+                visit(median + 1, to, depth + 1);
+                if (delta * delta < bestDistance) {
+                    visit(from, median, depth + 1);
+                }
+            }
+        }
+    }
+
+    private static class Point {
+
+        private final TownSuggest town;
+        private final double[] vector;
+
+        private Point(TownSuggest town, double[] vector) {
+            this.town = town;
+            this.vector = vector;
+        }
+    }
+
+    /**
+     * Résultat d'une recherche : la ville la plus proche et sa distance.
+     */
+    public static class Nearest {
+
+        private final TownSuggest town;
+        private final double distance;
+
+        private Nearest(TownSuggest town, double distance) {
+            this.town = town;
+            this.distance = distance;
+        }
+
+        public TownSuggest getTown() {
+            return town;
+        }
+
+        public double getDistance() {
+            return distance;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package nosql.workshop.services;
+
+import nosql.workshop.model.suggest.TownSuggest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache des suggestions de villes, indexé par texte saisi.
+ * <p>
+ * Seul un texte déjà demandé est servi par le cache : aucune réponse n'est déduite d'un préfixe plus court, l'analyseur
+ * du suggester de complétion (tirets, apostrophes, accents) et la taille de son résultat ne permettant pas de garantir
+ * qu'un résultat filtré serait identique à celui d'Elasticsearch.
+ * <p>
+ * Chaque invalidation ouvre une nouvelle génération : une suggestion calculée avant l'invalidation (appel en cours
+ * pendant un import des villes) n'est pas enregistrée. Le nombre d'entrées est borné, les moins récemment utilisées
+ * étant évincées en premier.
+ */
+public class TownSuggestCache {
+
+    private final int maxEntries;
+    private final Map<String, List<TownSuggest>> entries;
+
+    private long generation;
+    private long hits;
+    private long misses;
+    private long staleWrites;
+
+    public TownSuggestCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<String, List<TownSuggest>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<TownSuggest>> eldest) {
+                return size() > TownSuggestCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Retourne les suggestions en cache pour un texte saisi.
+     *
+     * @param prefix le texte saisi.
+     * @return les suggestions, ou <code>null</code> si le texte n'est pas en cache.
+     */
+    public synchronized List<TownSuggest> get(String prefix) {
+        List<TownSuggest> suggestions = entries.get(key(prefix));
+        if (suggestions != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return suggestions;
+    }
+
+    /**
+     * Retourne la génération courante, à lire avant d'interroger Elasticsearch et à passer à {@link #put}.
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Enregistre les suggestions retournées par Elasticsearch pour un texte saisi, sauf si le cache a été invalidé
+     * depuis le début de l'appel.
+     *
+     * @param prefix      le texte saisi.
+     * @param suggestions les suggestions.
+     * @param generation  la génération lue avant l'appel à Elasticsearch.
+     */
+    public synchronized void put(String prefix, List<TownSuggest> suggestions, long generation) {
+        if (generation != this.generation) {
+            staleWrites++;
+            return;
+        }
+        entries.put(key(prefix), Collections.unmodifiableList(new ArrayList<>(suggestions)));
+    }
+
+    /**
+     * Vide le cache, par exemple après un nouvel import des villes.
+     */
+    public synchronized void invalidate() {
+        generation++;
+        entries.clear();
+    }
+
+    public synchronized Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("entries", (long) entries.size());
+        stats.put("generation", generation);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("staleWrites", staleWrites);
+        return stats;
+    }
+
+    private static String key(String prefix) {
+        return prefix == null ? "" : prefix;
+    }
+}
@@ -0,0 +1,199 @@
+package nosql.workshop.services;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Phase de démarrage exécutée en tâche de fond : vérification des index MongoDB, lancement de la construction des
+ * groupes de marqueurs de la carte (cf. {@link MapClusterService}) puis, si elle est activée, mise en température de l'application (JIT, introspection Jackson, connexions) en appelant chaque endpoint.
+ * <p>
+ * L'application n'est déclarée prête ({@link #isReady()}) qu'une fois les index vérifiés (la vérification est
+ * retentée tant que MongoDB ne répond pas) et, si la mise en température est activée, qu'une fois au moins une partie
+ * de ses appels réussis : une instance dont tous les backends sont indisponibles reste non prête.
+ * La phase est lancée par {@link #start()}, une fois l'injection terminée.
+ */
+@Singleton
+public class WarmUp {
+
+    public static final String HTTP_PORT = "http.port";
+    public static final String WARM_UP_ENABLED = "warmup";
+    public static final int WARM_UP_ITERATIONS = 20;
+
+    private static final long SERVER_WAIT_MS = 30_000;
+    private static final long RETRY_DELAY_MS = 5_000;
+
+    private static final List<String> WARM_UP_URIS = Arrays.asList(
+            "/api/installations",
+            "/api/installations?view=summary",
+            "/api/installations/geosearch?lat=47.3&lng=-1.5&distance=3000",
+            "/api/installations/geosearch?lat=47.3&lng=-1.5&distance=3000&view=summary",
+            "/api/installations/search?query=piscine",
+            "/api/installations/search/faceted?query=piscine",
+            "/api/installations/suggest/pisc",
+            "/api/installations/stats",
+            "/api/installations/stats/cube",
+            "/api/towns/suggest/nan",
+            "/api/towns/location/Nantes",
+            "/api/towns/nearest?lat=47.2184&lng=-1.5536"
+    );
+
+    private final InstallationService installationService;
+    private final MapClusterService mapClusterService;
+    private final int httpPort;
+    private final boolean warmUpEnabled;
+
+    private volatile boolean ready;
+    private int calls;
+    private int failures;
+
+    @Inject
+    public WarmUp(InstallationService installationService, MapClusterService mapClusterService,
+                  @Named(HTTP_PORT) int httpPort, @Named(WARM_UP_ENABLED) boolean warmUpEnabled) {
+        this.installationService = installationService;
+        this.mapClusterService = mapClusterService;
+        this.httpPort = httpPort;
+        this.warmUpEnabled = warmUpEnabled;
+    }
+
+    /**
+     * Lance la phase de démarrage en tâche de fond.
+     */
+    public void start() {
+        Thread thread = new Thread(this::run, "warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    private void run() {
+        long startTime = System.currentTimeMillis();
+        while (!checkIndexes()) {
+            if (!pause()) {
+                return;
+            }
+        }
+        mapClusterService.rebuild();
+
+        if (warmUpEnabled && waitForServer()) {
+            while (!warmUp()) {
+                System.out.println("Mise en température en échec : " + failures + " appels en erreur sur " + calls);
+                if (!pause()) {
+                    return;
+                }
+            }
+            System.out.println("Mise en température : " + failures + " appels en erreur sur " + calls);
+        }
+
+        ready = true;
+        System.out.println("Application prête en " + (System.currentTimeMillis() - startTime) + " ms");
+    }
+
+    /**
+     * Crée et vérifie les index MongoDB.
+     *
+     * @return <code>false</code> si MongoDB n'a pas répondu (vérification à retenter).
+     */
+    private boolean checkIndexes() {
+        try {
+            installationService.createIndexes();
+            installationService.checkIndexes().stream()
+                    .filter(check -> !check.isIndexed())
+                    .forEach(check -> System.out.println("Filtre sans index : " + check.getShape() + " " + check.getQuery()));
+            return true;
+        } catch (RuntimeException e) {
+            System.out.println("Vérification des index MongoDB en échec, nouvel essai dans " + RETRY_DELAY_MS + " ms : " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Appelle chaque endpoint {@link #WARM_UP_ITERATIONS} fois, en comptant les appels en erreur.
+     *
+     * @return <code>false</code> si tous les appels ont échoué.
+     */
+    private boolean warmUp() {
+        calls = 0;
+        failures = 0;
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            WARM_UP_URIS.forEach(this::call);
+            String numero = randomNumero();
+            if (numero != null) {
+                call("/api/installations/" + numero);
+            }
+        }
+        return failures < calls;
+    }
+
+    private boolean pause() {
+        try {
+            Thread.sleep(RETRY_DELAY_MS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private boolean waitForServer() {
+        long deadline = System.currentTimeMillis() + SERVER_WAIT_MS;
+        while (System.currentTimeMillis() < deadline) {
+            try (Socket ignored = new Socket("localhost", httpPort)) {
+                return true;
+            } catch (IOException e) {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        System.out.println("Serveur HTTP injoignable, mise en température ignorée");
+        return false;
+    }
+
+    private String randomNumero() {
+        String body = call("/api/installations/random");
+        if (body == null) {
+            return null;
+        }
+        Matcher matcher = Pattern.compile("\"_id\"\\s*:\\s*\"([^\"]+)\"").matcher(body);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    /**
+     * Appelle un endpoint de l'application ; une erreur est comptée mais n'interrompt pas la mise en température
+     * (un seul backend peut être indisponible).
+     *
+     * @return le corps de la réponse, ou <code>null</code> en cas d'erreur.
+     */
+    private String call(String uri) {
+        calls++;
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + httpPort + uri).openConnection();
+            try (InputStream is = connection.getInputStream(); Scanner scanner = new Scanner(is, "UTF-8")) {
+                return scanner.useDelimiter("\\A").hasNext() ? scanner.next() : "";
+            } finally {
+                connection.disconnect();
+            }
+        } catch (IOException e) {
+            failures++;
+            return null;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+var RandomInstallation = React.createClass({
+    getInitialState: function () {
+        return {};
+    },
+    componentDidMount: function () {
+        var url = '/api/installations/random';
+        $.ajax({
+            url: url,
+            dataType: 'json',
+            success: function (data) {
+                this.setState({data: data});
+            }.bind(this),
+            error: function (xhr, status, err) {
+                console.error(url, status, err.toString());
+            }.bind(this)
+        });
+    },
+    render: function () {
+        var Glyphicon = ReactBootstrap.Glyphicon;
+        if (!this.state.data) {
+            return (
+                    <div>
+                        <Glyphicon glyph="refresh" className="glyphicon-refresh-animate" />
+                    </div>
+            );
+        }
+        else {
+            return (
+                    <Installation data={this.state.data} />
+            )
+        }
+    }
+});
+
+React.render(
+        <RandomInstallation />,
+        document.getElementById('random-installation')
+);
@@ -0,0 +1,115 @@
+    var map;
+
+    var markers = [];
+
+    function setPosition(lat, lng) {
+        var mapOptions = {
+            zoom: 13,
+            center: new google.maps.LatLng(lat, lng)
+        };
+
+        var map = new google.maps.Map(document.getElementById('map'), mapOptions);
+
+        // les marqueurs sont regroupés côté serveur selon la fenêtre affichée et le niveau de zoom
+        google.maps.event.addListener(map, 'idle', function () {
+            var bounds = map.getBounds();
+            var url = '/api/installations/viewport?minLat=' + bounds.getSouthWest().lat() + '&minLng=' + bounds.getSouthWest().lng()
+                    + '&maxLat=' + bounds.getNorthEast().lat() + '&maxLng=' + bounds.getNorthEast().lng() + '&zoom=' + map.getZoom();
+            $.ajax({
+                url: url,
+                dataType: 'json',
+                success: function (clusters) {
+                    $.each(markers, function (index, marker) {
+                        marker.setMap(null);
+                    });
+                    markers = $.map(clusters, function (cluster) {
+                        var marker = new google.maps.Marker({
+                            position: new google.maps.LatLng(cluster.latitude, cluster.longitude),
+                            title: cluster.count > 1 ? cluster.count + ' installations' : cluster.nom,
+                            label: cluster.count > 1 ? String(cluster.count) : undefined
+                        });
+                        marker.setMap(map);
+                        return marker;
+                    });
+                },
+                error: function (xhr, status, err) {
+                    console.error(url, status, err.toString());
+                }
+            });
+        });
+    }
+
+    function initialize() {
+        var lat = 47.3;
+        var lng = -1.5;
+        setPosition.call(this, lat, lng);
+    }
+
+    // en développement, ce script est compilé dans le navigateur après le chargement de la page
+    if (document.readyState === 'complete') {
+        initialize();
+    } else {
+        google.maps.event.addDomListener(window, 'load', initialize);
+    }
+
+    var SearchForm = React.createClass({
+        handleSubmit: function (e) {
+            e.preventDefault();
+            var query = this.refs.query.getDOMNode().value.trim();
+
+            console.log(query);
+
+            if (!query) {
+                return;
+            }
+
+            $.ajax({
+                    url: "/api/towns/location/"+query,
+                    success: function(location){
+                        console.log(location);
+                        if(location && location.length > 0){
+                            setPosition(location[1], location[0]);
+                        }
+                    },
+                    error: function (xhr, status, err) {
+                        console.error(url, status, err.toString());
+                    }
+            });
+        },
+
+        componentDidMount: function(){
+            console.log("componentDidMount"+this.getDOMNode());
+            var element = this.refs.query.getDOMNode();
+            $(element).typeahead(
+                    null,
+                    {
+                        displayKey : "townName",
+                        source: function(query, cb){
+                                return $.ajax({
+                                    url: "/api/towns/suggest/"+query,
+                                    success: function(results){
+                                        cb(results);
+                                    },
+                                    error: function (xhr, status, err) {
+                                        console.error(url, status, err.toString());
+                                    }
+                                });
+                        }
+                    }
+            );
+	    },
+        render: function () {
+            return (
+                    <form id="search-city-form" className="form-inline" onSubmit={this.handleSubmit} >
+                        <input id="search-city-input" type="text" className="form-control"
+                            placeholder="Recherchez une ville ..." ref="query" required="true"/>
+                        <button id="search-city-submit" type="submit" className="btn btn-primary">Go !</button>
+                    </form>
+            );
+        }
+    });
+
+    React.render(
+        <SearchForm />,
+        document.getElementById('search-city-box')
+    );
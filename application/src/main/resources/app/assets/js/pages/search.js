@@ -0,0 +1,73 @@
+var SearchForm = React.createClass({
+    handleSubmit: function (e) {
+        e.preventDefault();
+        var query = this.refs.query.getDOMNode().value.trim();
+        if (!query) {
+            return;
+        }
+        this.props.onSearchSubmit({query: query});
+    },
+    render: function () {
+        return (
+                <form id="search-form" className="form-inline" onSubmit={this.handleSubmit}>
+                    <input id="search-input" type="text" className="form-control" placeholder="Votre recherche ..." ref="query" required="true"/>
+                    <button id="search-submit" type="submit" className="btn btn-primary">Go !</button>
+                </form>
+        );
+    }
+});
+
+var SearchBox = React.createClass({
+    getInitialState: function () {
+        return {};
+    },
+    handleSearchSubmit: function (queryForm) {
+        var url = '/api/installations/search/faceted?query=' + queryForm.query;
+        $.ajax({
+            url: url,
+            dataType: 'json',
+            success: function (result) {
+                this.setState({data: result.installations, facets: result.facets});
+            }.bind(this),
+            error: function (xhr, status, err) {
+                console.error(url, status, err.toString());
+            }.bind(this)
+        });
+    },
+    render: function () {
+        var installations = [];
+        if (this.state.data) {
+            installations = this.state.data.map(function (installation) {
+                return (
+                        <Installation data={installation} />
+                );
+            });
+        }
+        var facets = [];
+        if (this.state.facets) {
+            var Label = ReactBootstrap.Label;
+            facets = Object.keys(this.state.facets).map(function (name) {
+                var counts = this.state.facets[name].map(function (facet) {
+                    return (
+                            <span>{facet.value} <Label>{facet.count}</Label> </span>
+                    );
+                });
+                return (
+                        <p><b>{name}</b> : {counts}</p>
+                );
+            }.bind(this));
+        }
+        return (
+                <div>
+                    <SearchForm onSearchSubmit={this.handleSearchSubmit} />
+                    {facets}
+                    {installations}
+                </div>
+        );
+    }
+});
+
+React.render(
+        <SearchBox />,
+        document.getElementById('search-box')
+);
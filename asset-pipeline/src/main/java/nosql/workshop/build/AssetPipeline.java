@@ -0,0 +1,218 @@
+package nosql.workshop.build;
+
+import com.yahoo.platform.yui.compressor.CssCompressor;
+import com.yahoo.platform.yui.compressor.JavaScriptCompressor;
+import org.mozilla.javascript.ErrorReporter;
+import org.mozilla.javascript.EvaluatorException;
+
+import javax.script.Invocable;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Construction des ressources front-end de l'application, exécutée par Maven lors de la phase <code>process-classes</code>
+ * du module <code>application</code> (ce module n'est qu'un outil de build, absent du livrable).
+ * <p>
+ * Les composants JSX sont compilés (JSXTransformer exécuté par Nashorn), concaténés aux bibliothèques puis minifiés ;
+ * les feuilles de style sont concaténées et minifiées. Chaque fichier produit porte une empreinte de son contenu
+ * dans son nom et est accompagné d'une version gzip ; les fichiers d'un build précédent sont supprimés. Les pages HTML copiées dans le répertoire cible sont
+ * réécrites pour référencer ces fichiers, sans compilation JSX dans le navigateur.
+ * <p>
+ * Usage : <code>AssetPipeline &lt;répertoire app source&gt; &lt;répertoire app cible&gt;</code>
+ */
+public class AssetPipeline {
+
+    public static final String DIST = "assets/dist";
+
+    private static final List<String> VENDOR_JS = Arrays.asList(
+            "assets/js/jquery.min.js",
+            "assets/js/bootstrap.min.js",
+            "assets/js/react.min.js",
+            "assets/js/react-bootstrap.min.js");
+    private static final List<String> COMPONENTS_JSX = Arrays.asList(
+            "assets/js/Installation.js",
+            "assets/js/InstallationList.js");
+    private static final List<String> CSS = Arrays.asList(
+            "assets/css/bootstrap.min.css",
+            "assets/css/custom.css",
+            "assets/css/typeahead.css");
+    private static final String PAGES_JSX = "assets/js/pages";
+
+    private final Path source;
+    private final Path target;
+    private final Invocable jsxTransformer;
+
+    public AssetPipeline(Path source, Path target) throws IOException, ScriptException {
+        this.source = source;
+        this.target = target;
+
+        ScriptEngine engine = new ScriptEngineManager().getEngineByName("nashorn");
+        if (engine == null) {
+            throw new IllegalStateException("Nashorn JavaScript engine is required to compile JSX");
+        }
+        // JSXTransformer s'enregistre sur l'objet global (window dans un navigateur)
+        engine.eval("var global = this;");
+        engine.eval(read("assets/js/JSXTransformer.js"));
+        engine.eval("function transformJsx(source) { return JSXTransformer.transform(source).code; }");
+        this.jsxTransformer = (Invocable) engine;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new AssetPipeline(Paths.get(args[0]), Paths.get(args[1])).run();
+    }
+
+    public void run() throws Exception {
+        cleanDist();
+
+        // bibliothèques (déjà minifiées) et composants communs
+        StringBuilder components = new StringBuilder();
+        for (String file : COMPONENTS_JSX) {
+            components.append(compileJsx(file)).append('\n');
+        }
+        StringBuilder appJs = new StringBuilder();
+        for (String file : VENDOR_JS) {
+            appJs.append(read(file)).append(";\n");
+        }
+        appJs.append(minifyJs(components.toString()));
+        String appJsName = write("app", ".js", appJs.toString());
+
+        StringBuilder appCss = new StringBuilder();
+        for (String file : CSS) {
+            appCss.append(read(file)).append('\n');
+        }
+        String appCssName = write("app", ".css", minifyCss(appCss.toString()));
+
+        // scripts propres à chaque page
+        Map<String, String> pages = new LinkedHashMap<>();
+        try (DirectoryStream<Path> pageFiles = Files.newDirectoryStream(source.resolve(PAGES_JSX), "*.js")) {
+            for (Path pageFile : pageFiles) {
+                String page = pageFile.getFileName().toString().replace(".js", "");
+                pages.put(page, write("page-" + page, ".js", minifyJs(compileJsx(PAGES_JSX + "/" + page + ".js"))));
+            }
+        }
+
+        rewriteLayout(appJsName, appCssName);
+        for (Map.Entry<String, String> page : pages.entrySet()) {
+            rewritePage(page.getKey(), page.getValue());
+        }
+    }
+
+    /**
+     * Vide le répertoire des fichiers produits : les fichiers d'un build précédent, dont l'empreinte a changé,
+     * ne sont plus référencés et ne doivent pas être livrés.
+     */
+    private void cleanDist() throws IOException {
+        Path dist = target.resolve(DIST);
+        Files.createDirectories(dist);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dist)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private void rewriteLayout(String appJsName, String appCssName) throws IOException {
+        Path layout = target.resolve("_layouts/default.html");
+        String html = new String(Files.readAllBytes(layout), StandardCharsets.UTF_8);
+        html = html.replaceAll("(?s)\\s*<link href=\"assets/css/[^\"]+\" rel=\"stylesheet\">",
+                "");
+        html = html.replaceAll("(?s)\\s*<script src=\"assets/js/[^\"]+\"( type=\"text/jsx\")?></script>", "");
+        html = html.replace("</head>",
+                "    <link href=\"" + DIST + "/" + appCssName + "\" rel=\"stylesheet\">\n" +
+                "    <script src=\"" + DIST + "/" + appJsName + "\"></script>\n" +
+                "</head>");
+        Files.write(layout, html.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void rewritePage(String page, String pageJsName) throws IOException {
+        Path html = target.resolve(page + ".html");
+        if (!Files.exists(html)) {
+            return;
+        }
+        String content = new String(Files.readAllBytes(html), StandardCharsets.UTF_8);
+        content = content.replace(
+                "<script src=\"" + PAGES_JSX + "/" + page + ".js\" type=\"text/jsx\"></script>",
+                "<script src=\"" + DIST + "/" + pageJsName + "\"></script>");
+        Files.write(html, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String compileJsx(String file) throws IOException, ScriptException, NoSuchMethodException {
+        return (String) jsxTransformer.invokeFunction("transformJsx", read(file));
+    }
+
+    private String minifyJs(String js) throws IOException {
+        StringWriter out = new StringWriter();
+        new JavaScriptCompressor(new StringReader(js), new FailingErrorReporter()).compress(out, -1, true, false, false, false);
+        return out.toString();
+    }
+
+    private String minifyCss(String css) throws IOException {
+        StringWriter out = new StringWriter();
+        new CssCompressor(new StringReader(css)).compress(out, -1);
+        return out.toString();
+    }
+
+    /**
+     * Écrit un fichier dont le nom porte l'empreinte du contenu, ainsi que sa version gzip.
+     *
+     * @return le nom du fichier écrit.
+     */
+    private String write(String name, String extension, String content) throws IOException, NoSuchAlgorithmException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        String fileName = name + "." + fingerprint(bytes) + extension;
+
+        Path file = target.resolve(DIST).resolve(fileName);
+        Files.write(file, bytes);
+        try (OutputStream gzip = new GZIPOutputStream(Files.newOutputStream(Paths.get(file + ".gz")))) {
+            gzip.write(bytes);
+        }
+        return fileName;
+    }
+
+    private static String fingerprint(byte[] bytes) throws NoSuchAlgorithmException {
+        byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+        StringBuilder hex = new StringBuilder();
+        for (int i = 0; i < 5; i++) {
+            hex.append(String.format("%02x", digest[i]));
+        }
+        return hex.toString();
+    }
+
+    private String read(String file) throws IOException {
+        return new String(Files.readAllBytes(source.resolve(file)), StandardCharsets.UTF_8);
+    }
+
+    private static class FailingErrorReporter implements ErrorReporter {
+
+        @Override
+        public void warning(String message, String sourceName, int line, String lineSource, int lineOffset) {
+        }
+
+        @Override
+        public void error(String message, String sourceName, int line, String lineSource, int lineOffset) {
+            throw new EvaluatorException(message, sourceName, line, lineSource, lineOffset);
+        }
+
+        @Override
+        public EvaluatorException runtimeError(String message, String sourceName, int line, String lineSource, int lineOffset) {
+            return new EvaluatorException(message, sourceName, line, lineSource, lineOffset);
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package nosql.workshop.batch.elasticsearch;
 
 import nosql.workshop.batch.elasticsearch.util.ElasticSearchBatchUtils;
+import nosql.workshop.batch.util.ApplicationCaches;
+import nosql.workshop.batch.util.CsvFiles;
+import nosql.workshop.batch.util.DurabilityProfile;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.client.Client;
@@ -18,19 +21,29 @@ import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 
 /**
  * Job d'import des rues de towns_paysdeloire.csv vers ElasticSearch (/towns/town)
+ * <p>
+ * Le profil de durabilité (cf. {@link DurabilityProfile}) fixe le niveau de cohérence du bulk.
+ * Quel que soit le profil, l'index est rafraîchi avant l'invalidation du cache de l'application : une suggestion
+ * demandée entre les deux ne peut donc pas remettre en cache les anciens résultats.
  */
 public class ImportTowns {
+
+    public static final String TOWNS_INDEX = "towns";
+
     public static void main(String[] args) throws IOException {
+        DurabilityProfile profile = DurabilityProfile.fromArgs(args);
+
         // change the name of the cluster
         Settings settings = ImmutableSettings.settingsBuilder().put("cluster.name", "teambs").build();
         
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(ImportTowns.class.getResourceAsStream("/csv/towns_paysdeloire.csv")));
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(CsvFiles.open("towns_paysdeloire.csv")));
              Client elasticSearchClient = new TransportClient(settings).addTransportAddress(new InetSocketTransportAddress("localhost", 9300))) {
 
 
             //checkIndexExists("towns", elasticSearchClient);
 
-            BulkRequestBuilder bulkRequest = elasticSearchClient.prepareBulk();
+            BulkRequestBuilder bulkRequest = elasticSearchClient.prepareBulk()
+                    .setConsistencyLevel(profile.getConsistencyLevel());
 
             reader.lines()
                     .skip(1)
@@ -40,8 +53,13 @@ public class ImportTowns {
             BulkResponse bulkItemResponses = bulkRequest.execute().actionGet();
 
             dealWithFailures(bulkItemResponses);
+
+            // les villes importées doivent être visibles avant que l'application ne vide son cache
+            elasticSearchClient.admin().indices().prepareRefresh(TOWNS_INDEX).execute().actionGet();
         }
 
+        // cache de suggestions de villes et index des villes les plus proches (cf. ApplicationCaches)
+        ApplicationCaches.invalidate("/api/towns/suggest/cache/invalidate", "cache de suggestions");
     }
 
     private static void insertTown(String line, BulkRequestBuilder bulkRequest, Client elasticSearchClient) {
@@ -57,7 +75,7 @@ public class ImportTowns {
 
         try {
             bulkRequest.add(
-                    elasticSearchClient.prepareIndex("towns", "town")
+                    elasticSearchClient.prepareIndex(TOWNS_INDEX, "town")
                             .setSource(
                                     jsonBuilder()
                                             .startObject()
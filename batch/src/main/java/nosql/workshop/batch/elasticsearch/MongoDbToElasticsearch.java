@@ -1,30 +1,83 @@
 package nosql.workshop.batch.elasticsearch;
 
+import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
 import com.mongodb.MongoClient;
 import nosql.workshop.batch.elasticsearch.util.ElasticSearchBatchUtils;
-import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import nosql.workshop.batch.elasticsearch.util.IdRange;
+import nosql.workshop.batch.util.DurabilityProfile;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequestBuilder;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.client.IndicesAdminClient;
 import org.elasticsearch.client.transport.TransportClient;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.transport.InetSocketTransportAddress;
 
-import java.io.IOException;
 import java.net.UnknownHostException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static nosql.workshop.batch.elasticsearch.util.ElasticSearchBatchUtils.*;
-import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 
 /**
  * Transferts les documents depuis MongoDB vers Elasticsearch.
+ * <p>
+ * Les documents sont chargés dans un nouvel index horodaté (refresh désactivé, sans réplique pendant le chargement).
+ * La collection est lue en parallèle par plages de numéros d'installation (cf. {@link IdRange}),
+ * le nombre de curseurs étant fixé par la propriété <code>export.workers</code> (nombre de processeurs par défaut).
+ * Une fois l'index vérifié, l'alias 'installations' interrogé par l'application est basculé atomiquement
+ * vers ce nouvel index, puis les anciens index sont supprimés. Un échec d'indexation d'un lot, ou un vidage de
+ * l'indexeur bulk qui n'aboutit pas dans le délai, fait échouer l'export avant la bascule.
+ * <p>
+ * Migration unique : si 'installations' est encore un index (et non un alias), il ne peut être remplacé par l'alias
+ * qu'après sa suppression, et la recherche est indisponible entre les deux. Cette migration, à faire pendant une
+ * fenêtre de maintenance, n'est effectuée qu'avec l'option {@value #REPLACE_LEGACY_INDEX_OPTION} ; sans elle,
+ * l'export est refusé avant tout chargement.
+ * <p>
+ * Le profil de durabilité (cf. {@link DurabilityProfile}) fixe le niveau de cohérence des requêtes d'indexation ;
+ * en profil <code>safe</code>, l'index est chargé directement avec ses répliques et son refresh de recherche.
  */
 public class MongoDbToElasticsearch {
 
+    public static final String INSTALLATIONS_ALIAS = "installations";
+    public static final int BULK_SIZE = 1000;
+    public static final String EXPORT_WORKERS = "export.workers";
+    public static final String NOM_SUGGEST_FIELD = "nom_suggest";
+    public static final String ALL_COMMUNES = "_all_";
+    public static final String REPLACE_LEGACY_INDEX_OPTION = "--replace-legacy-index";
+
+    private static final int PARTITIONS_PER_WORKER = 4;
+    private static final int MAX_SUGGEST_INPUTS = 5;
+    private static final long BULK_CLOSE_TIMEOUT_MINUTES = 10;
+
+    private static final String LOAD_REFRESH_INTERVAL = "-1";
+    private static final String SEARCH_REFRESH_INTERVAL = "1s";
+    private static final int SEARCH_NUMBER_OF_REPLICAS = 1;
+
     public static void main(String[] args) throws UnknownHostException {
 
+        DurabilityProfile profile = DurabilityProfile.fromArgs(args);
+        boolean replaceLegacyIndex = Arrays.asList(args).contains(REPLACE_LEGACY_INDEX_OPTION);
         MongoClient mongoClient = null;
 
         long startTime = System.currentTimeMillis();
@@ -33,36 +86,251 @@ public class MongoDbToElasticsearch {
         Settings settings = ImmutableSettings.settingsBuilder().put("cluster.name", "teambs").build();
 
         try (Client elasticSearchClient = new TransportClient(settings).addTransportAddress(new InetSocketTransportAddress(ES_DEFAULT_HOST, ES_DEFAULT_PORT))) {
-            //checkIndexExists("installations", elasticSearchClient);
+            IndicesAdminClient indices = elasticSearchClient.admin().indices();
+            String newIndex = INSTALLATIONS_ALIAS + "_" + new SimpleDateFormat("yyyyMMddHHmmss").format(new Date());
+
+            boolean legacyIndex = isLegacyIndex(indices);
+            if (legacyIndex && !replaceLegacyIndex) {
+                throw new IllegalStateException("'" + INSTALLATIONS_ALIAS + "' is a concrete index, not an alias : replacing it"
+                        + " makes search unavailable until the alias is created. Run again with " + REPLACE_LEGACY_INDEX_OPTION
+                        + " during a maintenance window");
+            }
+
+            // création du nouvel index, paramétré pour le chargement
+            indices.prepareCreate(newIndex).setSource(readIndexDefinition(INSTALLATIONS_ALIAS)).execute().actionGet();
+            indices.prepareUpdateSettings(newIndex).setSettings(profile.isSearchSettingsDuringLoad()
+                    ? searchSettings()
+                    : ImmutableSettings.settingsBuilder()
+                        .put("index.refresh_interval", LOAD_REFRESH_INTERVAL)
+                        .put("index.number_of_replicas", 0)
+                        .build()).execute().actionGet();
 
             mongoClient = new MongoClient();
+            DBCollection installationsCollection = ElasticSearchBatchUtils.getInstallationsCollection(mongoClient);
+            long expectedCount = installationsCollection.count();
 
-            // cursor all database objects from mongo db
-            DBCursor cursor = ElasticSearchBatchUtils.getMongoCursorToAllInstallations(mongoClient);
+            // lecture parallèle de plages de numéros, alimentant un indexeur bulk partagé
+            int workers = Integer.getInteger(EXPORT_WORKERS, Runtime.getRuntime().availableProcessors());
+            List<IdRange> ranges = IdRange.split(installationsCollection, workers * PARTITIONS_PER_WORKER);
+            System.out.println("Export of " + expectedCount + " documents in " + ranges.size() + " ranges with " + workers + " workers (profile " + profile + ")");
 
-            BulkRequestBuilder bulkRequest = elasticSearchClient.prepareBulk();
+            BulkListener bulkListener = new BulkListener();
+            BulkProcessor bulkProcessor = BulkProcessor.builder(elasticSearchClient, bulkListener)
+                    .setBulkActions(BULK_SIZE)
+                    .setConcurrentRequests(workers)
+                    .build();
 
+            ExecutorService executor = Executors.newFixedThreadPool(workers);
+            Exception failure = null;
+            try {
+                List<Future<Long>> exports = new ArrayList<>();
+                for (IdRange range : ranges) {
+                    exports.add(executor.submit(() -> exportRange(installationsCollection, range, newIndex, profile, bulkProcessor)));
+                }
+                for (Future<Long> export : exports) {
+                    export.get();
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                failure = e;
+            } finally {
+                executor.shutdownNow();
+                if (!awaitClose(bulkProcessor) && failure == null) {
+                    failure = new IllegalStateException("Bulk indexing did not complete within " + BULK_CLOSE_TIMEOUT_MINUTES + " minutes");
+                }
+            }
+            if (failure == null && bulkListener.getFailedDocuments() > 0) {
+                failure = new IllegalStateException(bulkListener.getFailedDocuments() + " documents failed to index");
+            }
+            if (failure != null) {
+                indices.prepareDelete(newIndex).execute().actionGet();
+                throw new IllegalStateException("Export to " + newIndex + " failed", failure);
+            }
+
+            // retour au paramétrage de recherche
+            if (!profile.isSearchSettingsDuringLoad()) {
+                indices.prepareUpdateSettings(newIndex).setSettings(searchSettings()).execute().actionGet();
+            }
+            indices.prepareRefresh(newIndex).execute().actionGet();
+
+            // vérification avant bascule : l'index en service reste inchangé en cas d'échec
+            long indexedCount = elasticSearchClient.prepareCount(newIndex).execute().actionGet().getCount();
+            if (indexedCount != expectedCount) {
+                indices.prepareDelete(newIndex).execute().actionGet();
+                throw new IllegalStateException("Smoke test failed on " + newIndex + " : " + indexedCount + " documents indexed, " + expectedCount + " expected");
+            }
+
+            List<String> oldIndices = swapAlias(indices, newIndex, legacyIndex);
+            for (String oldIndex : oldIndices) {
+                indices.prepareDelete(oldIndex).execute().actionGet();
+            }
+
+            System.out.println("Inserted all documents in " + newIndex + " in " + (System.currentTimeMillis() - startTime) + " ms");
+        } finally {
+            if (mongoClient != null) {
+                mongoClient.close();
+            }
+        }
+
+    }
+
+    /**
+     * Lit les installations d'une plage et les transmet à l'indexeur bulk.
+     *
+     * @return le nombre d'installations lues.
+     */
+    private static long exportRange(DBCollection installationsCollection, IdRange range, String index, DurabilityProfile profile, BulkProcessor bulkProcessor) {
+        long count = 0;
+        DBCursor cursor = installationsCollection.find(range.toQuery());
+        try {
             while (cursor.hasNext()) {
                 DBObject object = cursor.next();
 
                 String objectId = (String) object.get("_id");
                 object.removeField("dateMiseAJourFiche");
 
-                bulkRequest.add(
-                        elasticSearchClient.prepareIndex("installations", "installation", objectId).setSource(object.toMap())
-                );
+                Map<String, Object> source = new HashMap<>();
+                for (String key : object.keySet()) {
+                    source.put(key, object.get(key));
+                }
+                if (object.get("nom") != null) {
+                    source.put(NOM_SUGGEST_FIELD, nomSuggest(object));
+                }
+                bulkProcessor.add(new IndexRequest(index, "installation", objectId)
+                        .source(source)
+                        .consistencyLevel(profile.getConsistencyLevel()));
+                count++;
             }
-            BulkResponse bulkItemResponses = bulkRequest.execute().actionGet();
+        } finally {
+            cursor.close();
+        }
+        return count;
+    }
 
-            dealWithFailures(bulkItemResponses);
+    /**
+     * Champ de complétion sur le nom de l'installation, avec la commune comme contexte.
+     * <p>
+     * Le nom est proposé à partir de chacun de ses mots ; l'installation est rattachée à sa commune et à
+     * {@link #ALL_COMMUNES}, pour les suggestions sans commune. La sortie inclut le numéro, afin que des
+     * installations homonymes ne soient pas fusionnées par le suggester.
+     */
+    private static Map<String, Object> nomSuggest(DBObject installation) {
+        String nom = installation.get("nom").toString();
 
-            System.out.println("Inserted all documents in " + (System.currentTimeMillis() - startTime) + " ms");
-        } finally {
-            if (mongoClient != null) {
-                mongoClient.close();
+        List<String> input = new ArrayList<>();
+        String[] words = nom.trim().split("\\s+");
+        for (int i = 0; i < words.length && i < MAX_SUGGEST_INPUTS; i++) {
+            input.add(String.join(" ", Arrays.asList(words).subList(i, words.length)));
+        }
+
+        List<String> communes = new ArrayList<>();
+        communes.add(ALL_COMMUNES);
+        Object adresse = installation.get("adresse");
+        if (adresse instanceof DBObject && ((DBObject) adresse).get("commune") != null) {
+            communes.add(((DBObject) adresse).get("commune").toString().toLowerCase(Locale.FRENCH));
+        }
+
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("numero", installation.get("_id"));
+        payload.put("nom", nom);
+
+        Map<String, Object> suggest = new HashMap<>();
+        suggest.put("input", input);
+        suggest.put("output", nom + " (" + installation.get("_id") + ")");
+        suggest.put("payload", payload);
+        suggest.put("context", Collections.singletonMap("commune", communes));
+        return suggest;
+    }
+
+    private static Settings searchSettings() {
+        return ImmutableSettings.settingsBuilder()
+                .put("index.refresh_interval", SEARCH_REFRESH_INTERVAL)
+                .put("index.number_of_replicas", SEARCH_NUMBER_OF_REPLICAS)
+                .build();
+    }
+
+    /**
+     * Vide l'indexeur bulk et attend la fin des requêtes en cours.
+     *
+     * @return <code>false</code> si toutes les requêtes ne sont pas terminées dans le délai.
+     */
+    private static boolean awaitClose(BulkProcessor bulkProcessor) {
+        try {
+            return bulkProcessor.awaitClose(BULK_CLOSE_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Signale et compte les échecs d'indexation des requêtes bulk.
+     */
+    private static class BulkListener implements BulkProcessor.Listener {
+
+        private final AtomicLong failedDocuments = new AtomicLong();
+
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request) {
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+            dealWithFailures(response);
+            if (response.hasFailures()) {
+                for (BulkItemResponse item : response.getItems()) {
+                    if (item.isFailed()) {
+                        failedDocuments.incrementAndGet();
+                    }
+                }
             }
         }
 
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+            System.out.println("Bulk insert of " + request.numberOfActions() + " documents failed : " + failure);
+            failedDocuments.addAndGet(request.numberOfActions());
+        }
+
+        private long getFailedDocuments() {
+            return failedDocuments.get();
+        }
+    }
+
+    /**
+     * @return <code>true</code> si 'installations' est un index et non un alias (installation antérieure aux alias).
+     */
+    private static boolean isLegacyIndex(IndicesAdminClient indices) {
+        return !indices.prepareAliasesExist(INSTALLATIONS_ALIAS).execute().actionGet().exists()
+                && indices.prepareExists(INSTALLATIONS_ALIAS).execute().actionGet().isExists();
+    }
+
+    /**
+     * Bascule atomiquement l'alias vers le nouvel index.
+     *
+     * @param legacyIndex <code>true</code> pour la migration unique d'un index 'installations' vers l'alias
+     *                    (option {@value #REPLACE_LEGACY_INDEX_OPTION}).
+     * @return les index précédemment désignés par l'alias.
+     */
+    private static List<String> swapAlias(IndicesAdminClient indices, String newIndex, boolean legacyIndex) {
+        List<String> oldIndices = new ArrayList<>();
+
+        if (legacyIndex) {
+            // un index portant le nom de l'alias doit être supprimé avant la création de l'alias : recherche
+            // indisponible jusqu'à la fin de la bascule, sans retour arrière possible
+            System.out.println("Deleting legacy index " + INSTALLATIONS_ALIAS + " to replace it with an alias (maintenance window)");
+            indices.prepareDelete(INSTALLATIONS_ALIAS).execute().actionGet();
+        } else if (indices.prepareAliasesExist(INSTALLATIONS_ALIAS).execute().actionGet().exists()) {
+            indices.prepareGetAliases(INSTALLATIONS_ALIAS).execute().actionGet()
+                    .getAliases().keysIt().forEachRemaining(oldIndices::add);
+        }
+
+        IndicesAliasesRequestBuilder aliases = indices.prepareAliases().addAlias(newIndex, INSTALLATIONS_ALIAS);
+        for (String oldIndex : oldIndices) {
+            aliases.removeAlias(oldIndex, INSTALLATIONS_ALIAS);
+        }
+        aliases.execute().actionGet();
+
+        return oldIndices;
     }
 
 }
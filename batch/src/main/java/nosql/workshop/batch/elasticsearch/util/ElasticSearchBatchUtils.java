@@ -9,6 +9,10 @@ import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.client.Client;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -23,10 +27,12 @@ public abstract class ElasticSearchBatchUtils {
 
 
     public static DBCursor getMongoCursorToAllInstallations(MongoClient mongoClient) {
-        DB db = mongoClient.getDB("nosql-workshop");
-        DBCollection installationsCollection = db.getCollection("installations");
+        return getInstallationsCollection(mongoClient).find();
+    }
 
-        return installationsCollection.find();
+    public static DBCollection getInstallationsCollection(MongoClient mongoClient) {
+        DB db = mongoClient.getDB("nosql-workshop");
+        return db.getCollection("installations");
     }
 
     public static String handleComma(String line) {
@@ -49,6 +55,32 @@ public abstract class ElasticSearchBatchUtils {
         }
     }
 
+    /**
+     * Extrait la définition (settings et mappings) d'un index depuis le script 'elasticSearch/mappings.txt'.
+     *
+     * @param indexName le nom de l'index dans le script.
+     * @return le corps JSON de la requête de création de l'index.
+     */
+    public static String readIndexDefinition(String indexName) {
+        String script;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                ElasticSearchBatchUtils.class.getResourceAsStream("/elasticSearch/mappings.txt"), "UTF-8"))) {
+            StringBuilder builder = new StringBuilder();
+            reader.lines().forEach(line -> builder.append(line).append('\n'));
+            script = builder.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Matcher matcher = Pattern.compile("localhost:9200/(\\w+)/?\"?\\s+-d\\s*'(.*?)'", Pattern.DOTALL).matcher(script);
+        while (matcher.find()) {
+            if (matcher.group(1).equals(indexName)) {
+                return matcher.group(2);
+            }
+        }
+        throw new IllegalArgumentException("No definition for index " + indexName + " in mappings.txt");
+    }
+
     /**
      * Vérifie l'existance de l'index lève une
      * @param indexToChek
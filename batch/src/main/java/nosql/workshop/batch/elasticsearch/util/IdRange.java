@@ -0,0 +1,85 @@
+package nosql.workshop.batch.elasticsearch.util;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Plage de numéros d'installation [lower, upper[, permettant de parcourir la collection en parallèle.
+ * <p>
+ * Les numéros commencent par le code INSEE de la commune (5 caractères) : les bornes des plages sont des codes
+ * INSEE, de sorte que toutes les installations d'une commune sont lues par le même curseur.
+ */
+public class IdRange {
+
+    public static final int INSEE_LENGTH = 5;
+
+    private final String lower;
+    private final String upper;
+
+    public IdRange(String lower, String upper) {
+        this.lower = lower;
+        this.upper = upper;
+    }
+
+    /**
+     * Découpe l'espace des numéros en plages de tailles comparables.
+     * Les bornes sont choisies en parcourant uniquement l'index <code>_id</code>.
+     *
+     * @param collection la collection des installations.
+     * @param partitions le nombre de plages souhaité.
+     * @return les plages, couvrant l'ensemble des numéros (au plus <code>partitions</code>).
+     */
+    public static List<IdRange> split(DBCollection collection, int partitions) {
+        long count = collection.count();
+        long step = Math.max(1, count / partitions);
+
+        TreeSet<String> bounds = new TreeSet<>();
+        DBCursor ids = collection.find(new BasicDBObject(), new BasicDBObject("_id", 1)).sort(new BasicDBObject("_id", 1));
+        try {
+            long position = 0;
+            while (ids.hasNext()) {
+                String id = String.valueOf(ids.next().get("_id"));
+                if (position > 0 && position % step == 0 && id.length() >= INSEE_LENGTH) {
+                    bounds.add(id.substring(0, INSEE_LENGTH));
+                }
+                position++;
+            }
+        } finally {
+            ids.close();
+        }
+
+        List<IdRange> ranges = new ArrayList<>();
+        String lower = null;
+        for (String bound : bounds) {
+            ranges.add(new IdRange(lower, bound));
+            lower = bound;
+        }
+        ranges.add(new IdRange(lower, null));
+        return ranges;
+    }
+
+    /**
+     * Requête MongoDB sélectionnant les installations de la plage.
+     */
+    public DBObject toQuery() {
+        BasicDBObject condition = new BasicDBObject();
+        if (lower != null) {
+            condition.append("$gte", lower);
+        }
+        if (upper != null) {
+            condition.append("$lt", upper);
+        }
+        return condition.isEmpty() ? new BasicDBObject() : new BasicDBObject("_id", condition);
+    }
+
+    @Override
+    public String toString() {
+        return "[" + (lower != null ? lower : "") + ", " + (upper != null ? upper : "") + "[";
+    }
+}
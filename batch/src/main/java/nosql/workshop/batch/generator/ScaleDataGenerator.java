@@ -0,0 +1,289 @@
+package nosql.workshop.batch.generator;
+
+import nosql.workshop.batch.util.CsvFiles;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.BiFunction;
+
+/**
+ * Génère un jeu de données CSV N fois plus volumineux que les fichiers embarqués, pour mesurer les imports,
+ * l'indexation Elasticsearch et l'API à grande échelle.
+ * <p>
+ * Chaque ligne source est répliquée N fois. La réplique 0 est la ligne d'origine ; pour les suivantes, les clés
+ * (numéros d'installation et d'équipement, identifiants de ville) sont renumérotées de manière cohérente entre les
+ * fichiers, les coordonnées sont légèrement déplacées et les autres attributs (nom, places de parking, date de mise
+ * à jour, activité, niveau) sont tirés dans leur distribution observée dans les fichiers sources.
+ * La graine aléatoire est fixe : deux exécutions avec les mêmes paramètres produisent les mêmes fichiers.
+ * <p>
+ * Usage : <code>ScaleDataGenerator &lt;facteur (1 à 1000)&gt; &lt;répertoire de sortie&gt; [graine]</code>.
+ * Les fichiers produits sont importés en lançant les batchs avec <code>-Dcsv.dir=&lt;répertoire de sortie&gt;</code>.
+ */
+public class ScaleDataGenerator {
+
+    public static final long DEFAULT_SEED = 20150212L;
+    public static final int MAX_FACTOR = 1000;
+
+    // écart type du déplacement des coordonnées (environ 500 m)
+    private static final double JITTER_DEGREES = 0.005;
+    private static final long TOWN_ID_OFFSET = 10_000_000L;
+
+    private final int factor;
+    private final Path outputDir;
+    private final Random random;
+
+    public ScaleDataGenerator(int factor, Path outputDir, long seed) {
+        if (factor < 1 || factor > MAX_FACTOR) {
+            throw new IllegalArgumentException("Scale factor must be between 1 and " + MAX_FACTOR + " : " + factor);
+        }
+        this.factor = factor;
+        this.outputDir = outputDir;
+        this.random = new Random(seed);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage : ScaleDataGenerator <facteur> <répertoire de sortie> [graine]");
+            return;
+        }
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_SEED;
+        new ScaleDataGenerator(Integer.parseInt(args[0]), Paths.get(args[1]), seed).run();
+    }
+
+    public void run() throws IOException {
+        Files.createDirectories(outputDir);
+        long startTime = System.currentTimeMillis();
+
+        generateInstallations();
+        generateCoordinates();
+        generateEquipements();
+        generateActivites();
+        generateTowns();
+
+        System.out.println("Jeu de données x" + factor + " généré dans " + outputDir + " en " + (System.currentTimeMillis() - startTime) + " ms");
+    }
+
+    private void generateInstallations() throws IOException {
+        List<String> lines = readLines("installations.csv");
+        List<String[]> rows = parseQuoted(lines);
+        List<String> names = column(rows, 0);
+        List<String> parkings = column(rows, 17);
+        List<String> handicappedParkings = column(rows, 18);
+        List<String> updateDates = column(rows, 28);
+
+        write("installations.csv", lines.get(0), rows, (columns, replica) -> {
+            String[] row = columns.clone();
+            row[0] = pick(names);
+            row[1] = key(row[1], replica);
+            double latitude = jitter(Double.parseDouble(row[10]));
+            double longitude = jitter(Double.parseDouble(row[9]));
+            row[8] = "[ " + format(latitude) + " , " + format(longitude) + "]";
+            row[9] = format(longitude);
+            row[10] = format(latitude);
+            row[17] = pick(parkings);
+            row[18] = pick(handicappedParkings);
+            row[28] = pick(updateDates);
+            return quoted(row);
+        });
+    }
+
+    private void generateCoordinates() throws IOException {
+        List<String> lines = readLines("coordinates.csv");
+
+        write("coordinates.csv", lines.get(0), parseQuoted(lines), (columns, replica) -> {
+            String[] row = columns.clone();
+            row[0] = key(row[0], replica);
+            try {
+                row[1] = format(jitter(Double.parseDouble(row[1].trim())));
+                row[2] = format(jitter(Double.parseDouble(row[2].trim())));
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                // ligne invalide conservée telle quelle : le taux de rejet à l'import est préservé
+            }
+            return quoted(row);
+        });
+    }
+
+    /**
+     * Les équipements ne sont pas embarqués dans le projet : ils ne sont répliqués que s'ils sont disponibles.
+     */
+    private void generateEquipements() throws IOException {
+        List<String> lines;
+        try {
+            lines = readLines("equipements.csv");
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("equipements.csv absent : fichier non généré");
+            return;
+        }
+
+        List<String[]> rows = new ArrayList<>();
+        for (String line : lines.subList(1, lines.size())) {
+            rows.add(line.split(",", -1));
+        }
+        write("equipements.csv", lines.get(0), rows, (columns, replica) -> {
+            String[] row = columns.clone();
+            row[2] = key(row[2], replica);
+            row[4] = key(row[4], replica);
+            return String.join(",", row);
+        });
+    }
+
+    private void generateActivites() throws IOException {
+        List<String> lines = readLines("activites.csv");
+        List<String[]> rows = parseQuoted(lines);
+
+        // le code et le libellé d'une activité sont tirés ensemble
+        List<String[]> activites = new ArrayList<>();
+        for (String[] row : rows) {
+            if (row.length >= 6) {
+                activites.add(new String[]{row[4], row[5]});
+            }
+        }
+        List<String> levels = column(rows, 9);
+
+        write("activites.csv", lines.get(0), rows, (columns, replica) -> {
+            String[] row = columns.clone();
+            row[2] = key(row[2], replica);
+            if (row.length >= 6) {
+                String[] activite = activites.get(random.nextInt(activites.size()));
+                row[4] = activite[0];
+                row[5] = activite[1];
+            }
+            if (row.length >= 10) {
+                row[9] = pick(levels);
+            }
+            return quoted(row);
+        });
+    }
+
+    private void generateTowns() throws IOException {
+        List<String> lines = readLines("towns_paysdeloire.csv");
+
+        List<String[]> rows = new ArrayList<>();
+        for (String line : lines.subList(1, lines.size())) {
+            rows.add(new String[]{line});
+        }
+        write("towns_paysdeloire.csv", lines.get(0), rows, (columns, replica) -> {
+            // OBJECTID,"TOWNNAME","TOWNNAME_SUGGEST",...,X,Y : coordonnées avec une virgule décimale, non protégées
+            String line = columns[0];
+            int firstComma = line.indexOf(',');
+            int lastQuote = line.lastIndexOf('"');
+            String[] names = line.substring(firstComma + 1, lastQuote + 1).split("\",\"", -1);
+            String[] coordinates = line.substring(lastQuote + 2).split(",");
+            if (firstComma < 0 || names.length < 2 || coordinates.length != 4) {
+                return line;
+            }
+
+            long objectId = Long.parseLong(line.substring(0, firstComma)) + replica * TOWN_ID_OFFSET;
+            names[0] = names[0] + " " + replica;
+            names[1] = names[1] + " " + replica;
+            double longitude = jitter(Double.parseDouble(coordinates[0] + "." + coordinates[1]));
+            double latitude = jitter(Double.parseDouble(coordinates[2] + "." + coordinates[3]));
+            return objectId + "," + String.join("\",\"", names) + ","
+                    + String.format(Locale.FRENCH, "%.5f,%.5f", longitude, latitude);
+        });
+    }
+
+    /**
+     * Écrit un fichier contenant chaque ligne source suivie de ses répliques.
+     *
+     * @param fileName  le nom du fichier.
+     * @param header    la ligne d'en-tête.
+     * @param rows      les lignes source, découpées en colonnes.
+     * @param replicate la fonction produisant la ligne de la réplique demandée (à partir de 1).
+     */
+    private void write(String fileName, String header, List<String[]> rows, BiFunction<String[], Integer, String> replicate) throws IOException {
+        long count = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(outputDir.resolve(fileName), StandardCharsets.UTF_8)) {
+            writer.write(header);
+            writer.newLine();
+            for (int replica = 0; replica < factor; replica++) {
+                for (String[] row : rows) {
+                    writer.write(replica == 0 ? original(row, fileName) : replicate.apply(row, replica));
+                    writer.newLine();
+                    count++;
+                }
+            }
+        }
+        System.out.println(fileName + " : " + count + " lignes");
+    }
+
+    private static String original(String[] row, String fileName) {
+        if (fileName.equals("equipements.csv")) {
+            return String.join(",", row);
+        }
+        if (fileName.equals("towns_paysdeloire.csv")) {
+            return row[0];
+        }
+        return quoted(row);
+    }
+
+    private List<String> readLines(String fileName) throws IOException {
+        InputStream is = CsvFiles.open(fileName);
+        if (is == null) {
+            throw new IOException(fileName + " not found");
+        }
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+            reader.lines()
+                    .filter(line -> line.length() > 0)
+                    .forEach(lines::add);
+        }
+        return lines;
+    }
+
+    private static List<String[]> parseQuoted(List<String> lines) {
+        List<String[]> rows = new ArrayList<>();
+        for (String line : lines.subList(1, lines.size())) {
+            rows.add(line.substring(1, line.length() - 1).split("\",\"", -1));
+        }
+        return rows;
+    }
+
+    private static String quoted(String[] row) {
+        return "\"" + String.join("\",\"", row) + "\"";
+    }
+
+    /**
+     * Distribution observée d'une colonne : chaque valeur y figure autant de fois que dans le fichier source.
+     */
+    private static List<String> column(List<String[]> rows, int index) {
+        List<String> values = new ArrayList<>();
+        for (String[] row : rows) {
+            if (row.length > index) {
+                values.add(row[index]);
+            }
+        }
+        return values;
+    }
+
+    private String pick(List<String> values) {
+        return values.get(random.nextInt(values.size()));
+    }
+
+    private double jitter(double coordinate) {
+        return coordinate + random.nextGaussian() * JITTER_DEGREES;
+    }
+
+    /**
+     * Clé de la réplique, en conservant l'éventuel espace de tête présent dans les fichiers sources.
+     */
+    private static String key(String key, int replica) {
+        return key + "-" + replica;
+    }
+
+    private static String format(double coordinate) {
+        return String.format(Locale.ROOT, "%.6f", coordinate);
+    }
+}
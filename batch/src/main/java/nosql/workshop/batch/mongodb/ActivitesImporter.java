@@ -2,31 +2,37 @@ package nosql.workshop.batch.mongodb;
 
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBCollection;
+import com.mongodb.WriteConcern;
+import nosql.workshop.batch.util.CsvFiles;
 
-import java.io.*;
-
+/**
+ * Ajoute les activités aux équipements des installations.
+ * <p>
+ * Une même activité peut figurer plusieurs fois pour un équipement : chaque ligne du fichier est ajoutée telle quelle.
+ * Pour qu'une ligne rejouée lors d'une reprise ne soit pas ajoutée deux fois, chaque équipement retient le numéro
+ * de la dernière ligne appliquée (champ {@value #LINE_FIELD}), les lignes étant traitées dans l'ordre du fichier ;
+ * ce champ est retiré une fois l'étape terminée (étape {@value #CLEANUP_STAGE}).
+ */
 public class ActivitesImporter {
 
+    public static final String STAGE = "activites";
+    public static final String CLEANUP_STAGE = "activites_cleanup";
+    public static final String LINE_FIELD = "activitesLigne";
+
     private final DBCollection installationsCollection;
+    private final ImportCheckpoints checkpoints;
 
-    public ActivitesImporter(DBCollection installationsCollection) {
+    public ActivitesImporter(DBCollection installationsCollection, ImportCheckpoints checkpoints) {
         this.installationsCollection = installationsCollection;
+        this.checkpoints = checkpoints;
     }
 
     public void run() {
-        InputStream is = CsvToMongoDb.class.getResourceAsStream("/csv/activites.csv");
-
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is))) {
-            reader.lines()
-                    .skip(1)
-                    .filter(line -> line.length() > 0)
-                    .forEach(line -> updateEquipement(line));
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
-        }
+        checkpoints.processNumbered(STAGE, CsvFiles.open("activites.csv"), this::updateEquipement);
+        checkpoints.run(CLEANUP_STAGE, this::removeLineMarkers);
     }
 
-    private void updateEquipement(final String line) {
+    private void updateEquipement(final String line, final long lineNumber) {
         String[] columns = line
                 .substring(1, line.length() - 1)
                 .split("\",\"");
@@ -35,17 +41,29 @@ public class ActivitesImporter {
         if (columns.length >= 6) {
             String equipementId = columns[2].trim();
 
-            // create the query
-            BasicDBObject queryDBObject = new BasicDBObject("equipements.numero", equipementId);
+            // create the query : seul un équipement n'ayant pas encore reçu cette ligne est mis à jour
+            BasicDBObject queryDBObject = new BasicDBObject("equipements", new BasicDBObject("$elemMatch",
+                    new BasicDBObject("numero", equipementId)
+                            .append(LINE_FIELD, new BasicDBObject("$not", new BasicDBObject("$gte", lineNumber)))));
 
-            // create the new object
-            BasicDBObject activiteDBObject = new BasicDBObject("equipements.$.activites", columns[5]);
-            
-            // push the new object to the list
-            BasicDBObject updateDBObject = new BasicDBObject("$push", activiteDBObject);
+            // push the new object to the list, and remember the line
+            BasicDBObject updateDBObject = new BasicDBObject("$push", new BasicDBObject("equipements.$.activites", columns[5]))
+                    .append("$set", new BasicDBObject("equipements.$." + LINE_FIELD, lineNumber));
 
             // update to the collection
             installationsCollection.update(queryDBObject, updateDBObject);
         }
     }
+
+    /**
+     * Retire les numéros de ligne des équipements : l'opérateur positionnel ne visant qu'un équipement par
+     * installation et par passe, les passes sont répétées jusqu'à ce qu'il n'en reste plus.
+     */
+    private void removeLineMarkers() {
+        BasicDBObject queryDBObject = new BasicDBObject("equipements." + LINE_FIELD, new BasicDBObject("$exists", true));
+        BasicDBObject updateDBObject = new BasicDBObject("$unset", new BasicDBObject("equipements.$." + LINE_FIELD, ""));
+        while (installationsCollection.update(queryDBObject, updateDBObject, false, true, WriteConcern.ACKNOWLEDGED).getN() > 0) {
+            // passe suivante
+        }
+    }
 }
@@ -0,0 +1,95 @@
+package nosql.workshop.batch.mongodb;
+
+import nosql.workshop.batch.util.CsvFiles;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Corrections des coordonnées des installations, lues depuis 'coordinates.csv' et appliquées lors de l'import.
+ * <p>
+ * Les lignes invalides (numéro absent, coordonnée non numérique ou hors limites) sont rejetées et signalées.
+ * Si un numéro apparaît plusieurs fois, la dernière ligne valide l'emporte : une ligne rejetée ne remplace
+ * jamais une correction valide déjà chargée.
+ */
+public class CoordinatesCorrections {
+
+    private final Map<String, Double[]> coordinates = new HashMap<>();
+    private int rejected;
+
+    /**
+     * Charge les corrections depuis le fichier CSV embarqué.
+     *
+     * @return les corrections valides.
+     */
+    public static CoordinatesCorrections load() {
+        CoordinatesCorrections corrections = new CoordinatesCorrections();
+
+        InputStream is = CsvFiles.open("coordinates.csv");
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is))) {
+            int lineNumber = 1;
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.length() > 0) {
+                    corrections.add(lineNumber, line);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        System.out.println(corrections.coordinates.size() + " corrections de coordonnées chargées, " + corrections.rejected + " rejetées");
+        return corrections;
+    }
+
+    private void add(int lineNumber, String line) {
+        String[] columns = line
+                .substring(1, line.length() - 1)
+                .split("\",\"", -1);
+
+        if (columns.length != 3 || columns[0].trim().isEmpty()) {
+            reject(lineNumber, line, "format invalide");
+            return;
+        }
+
+        Double longitude = parse(columns[1]);
+        Double latitude = parse(columns[2]);
+        if (longitude == null || longitude < -180 || longitude > 180) {
+            reject(lineNumber, line, "longitude invalide");
+        } else if (latitude == null || latitude < -90 || latitude > 90) {
+            reject(lineNumber, line, "latitude invalide");
+        } else {
+            coordinates.put(columns[0].trim(), new Double[]{longitude, latitude});
+        }
+    }
+
+    private Double parse(String value) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void reject(int lineNumber, String line, String reason) {
+        rejected++;
+        System.out.println("Correction de coordonnées rejetée (ligne " + lineNumber + ", " + reason + ") : " + line);
+    }
+
+    /**
+     * Retourne les coordonnées corrigées d'une installation.
+     *
+     * @param numero le numéro de l'installation.
+     * @return les coordonnées [longitude, latitude], ou <code>null</code> si aucune correction n'est définie.
+     */
+    public Double[] get(String numero) {
+        return coordinates.get(numero);
+    }
+
+    public int getRejected() {
+        return rejected;
+    }
+}
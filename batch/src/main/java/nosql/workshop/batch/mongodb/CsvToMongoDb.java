@@ -1,16 +1,50 @@
 package nosql.workshop.batch.mongodb;
 
+import com.mongodb.BasicDBObject;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
 import com.mongodb.MongoClient;
+import com.mongodb.WriteConcern;
+import nosql.workshop.batch.util.ApplicationCaches;
+import nosql.workshop.batch.util.DurabilityProfile;
+
+import java.util.Arrays;
 
 /**
  * Importe les données issues des fichiers CSV dans la base MongoDB.
+ * <p>
+ * Avec l'option <code>--resume</code>, un import interrompu reprend à son dernier point de reprise
+ * (cf. {@link ImportCheckpoints}) ; sans elle, l'import repart de zéro.
+ * <p>
+ * Le profil de durabilité (cf. {@link DurabilityProfile}) fixe le write concern des écritures. En profil
+ * <code>fast</code>, la collection est d'abord vidée et les écritures non acquittées passent toutes par une même
+ * connexion, afin de rester ordonnées ; une vérification unique (écriture acquittée sur cette connexion, nombre
+ * d'installations) est faite avant le calcul des statistiques. Ce profil est réservé aux rechargements complets et
+ * refuse l'option <code>--resume</code> : un point de reprise peut y être enregistré avant que les écritures qui le
+ * précèdent n'aient été appliquées.
+ * <p>
+ * En fin d'import, l'application est invitée à recalculer les groupes de marqueurs de sa carte (cf. {@link ApplicationCaches}).
  */
 public class CsvToMongoDb {
 
+    public static final String RESUME_OPTION = "--resume";
+    public static final String STATS_CUBE_STAGE = "stats_cube";
+
+    // identifiant d'aucune installation : cible de l'écriture acquittée qui clôt un import non acquitté
+    private static final String VERIFY_MARKER = "__import_verification__";
+
     public static void main(String[] args) {
+        boolean resume = Arrays.asList(args).contains(RESUME_OPTION);
+        DurabilityProfile profile = DurabilityProfile.fromArgs(args);
+        if (resume && profile.isUnacknowledged()) {
+            System.err.println("L'option " + RESUME_OPTION + " n'est pas disponible avec le profil " + profile
+                    + " : relancer l'import complet, ou reprendre avec un profil acquitté");
+            System.exit(1);
+        }
+        System.out.println("Import avec le profil " + profile);
+
         MongoClient mongoClient = null;
+        boolean failed = false;
         try {
             // Création du client Mongo
             mongoClient = new MongoClient();
@@ -18,19 +52,63 @@ public class CsvToMongoDb {
             // Récupération de la collection "installations" de la base "nosql-workshop"
             DB db = mongoClient.getDB("nosql-workshop");
             DBCollection installationsCollection = db.getCollection("installations");
+            installationsCollection.setWriteConcern(profile.getWriteConcern());
+
+            ImportCheckpoints checkpoints = new ImportCheckpoints(db, resume);
 
             // Import des données
-            new InstallationsImporter(installationsCollection).run();
-            new EquipementsImporter(installationsCollection).run();
-            new ActivitesImporter(installationsCollection).run();
+            if (profile.isUnacknowledged()) {
+                db.requestStart();
+            }
+            try {
+                if (profile.isUnacknowledged()) {
+                    // rechargement complet : aucun document d'un import précédent ne doit fausser la vérification
+                    installationsCollection.remove(new BasicDBObject());
+                }
+                InstallationsImporter installationsImporter = new InstallationsImporter(installationsCollection, CoordinatesCorrections.load(), checkpoints);
+                installationsImporter.run();
+                new EquipementsImporter(installationsCollection, checkpoints).run();
+                new ActivitesImporter(installationsCollection, checkpoints).run();
+                if (profile.isUnacknowledged()) {
+                    verify(installationsCollection, installationsImporter.getImportedCount());
+                }
+            } finally {
+                if (profile.isUnacknowledged()) {
+                    db.requestDone();
+                }
+            }
+
+            // Pré-agrégation des statistiques
+            checkpoints.run(STATS_CUBE_STAGE, new StatsCubeBuilder(installationsCollection)::run);
+
+            ApplicationCaches.invalidate("/api/installations/viewport/cache/invalidate", "cache des marqueurs de la carte");
 
         } catch (Exception e) {
             e.printStackTrace();
+            failed = true;
         } finally {
             if (mongoClient != null) {
                 mongoClient.close();
             }
         }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Vérifie un import fait sans acquittement : une écriture acquittée est faite sur la même connexion (ce qui garantit
+     * que toutes les écritures précédentes ont été traitées), puis le nombre d'installations est comparé
+     * au nombre d'installations enregistrées par cet import.
+     */
+    private static void verify(DBCollection installationsCollection, long expected) {
+        installationsCollection.remove(new BasicDBObject("_id", VERIFY_MARKER), WriteConcern.ACKNOWLEDGED);
+
+        long count = installationsCollection.count();
+        if (count != expected) {
+            throw new IllegalStateException("Vérification de l'import échouée : " + count + " installations, " + expected + " attendues");
+        }
+        System.out.println("Vérification de l'import : " + count + " installations");
     }
 
 }
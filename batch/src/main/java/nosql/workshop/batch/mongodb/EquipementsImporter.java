@@ -2,28 +2,22 @@ package nosql.workshop.batch.mongodb;
 
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBCollection;
-
-import java.io.*;
+import nosql.workshop.batch.util.CsvFiles;
 
 public class EquipementsImporter {
 
+    public static final String STAGE = "equipements";
+
     private final DBCollection installationsCollection;
+    private final ImportCheckpoints checkpoints;
 
-    public EquipementsImporter(DBCollection installationsCollection) {
+    public EquipementsImporter(DBCollection installationsCollection, ImportCheckpoints checkpoints) {
         this.installationsCollection = installationsCollection;
+        this.checkpoints = checkpoints;
     }
 
     public void run() {
-        InputStream is = CsvToMongoDb.class.getResourceAsStream("/csv/equipements.csv");
-
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is))) {
-            reader.lines()
-                    .skip(1)
-                    .filter(line -> line.length() > 0)
-                    .forEach(line -> updateInstallation(line));
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
-        }
+        checkpoints.process(STAGE, CsvFiles.open("equipements.csv"), this::updateInstallation);
     }
 
     private void updateInstallation(final String line) {
@@ -31,9 +25,10 @@ public class EquipementsImporter {
 
         String installationId = columns[2].trim();
 
-        // create the query
+        // create the query : l'équipement n'est ajouté qu'une fois, même si la ligne est rejouée lors d'une reprise
         BasicDBObject queryDBObject = new BasicDBObject();
         queryDBObject.append("_id", installationId);
+        queryDBObject.append("equipements.numero", new BasicDBObject("$ne", columns[4]));
 
         // create the new object
         BasicDBObject equipementDBObject = new BasicDBObject();
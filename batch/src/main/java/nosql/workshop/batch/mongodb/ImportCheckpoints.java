@@ -0,0 +1,124 @@
+package nosql.workshop.batch.mongodb;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.util.Date;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Points de reprise de l'import, enregistrés dans la collection 'import_checkpoints'.
+ * <p>
+ * Pour chaque étape, la dernière ligne traitée du fichier est enregistrée à intervalles réguliers ; une étape
+ * terminée est marquée comme telle. En reprise, les étapes terminées sont ignorées et l'étape interrompue
+ * reprend après le dernier point enregistré. Les lignes traitées entre ce point et l'interruption sont rejouées :
+ * chaque étape doit donc être idempotente.
+ */
+public class ImportCheckpoints {
+
+    public static final String COLLECTION_NAME = "import_checkpoints";
+    public static final int CHECKPOINT_INTERVAL = 1000;
+
+    private final DBCollection checkpoints;
+
+    /**
+     * @param db     la base importée.
+     * @param resume <code>true</code> pour reprendre l'import précédent, <code>false</code> pour repartir de zéro.
+     */
+    public ImportCheckpoints(DB db, boolean resume) {
+        this.checkpoints = db.getCollection(COLLECTION_NAME);
+        if (!resume) {
+            checkpoints.drop();
+        }
+    }
+
+    public boolean isCompleted(String stage) {
+        DBObject checkpoint = checkpoints.findOne(new BasicDBObject("_id", stage));
+        return checkpoint != null && Boolean.TRUE.equals(checkpoint.get("completed"));
+    }
+
+    /**
+     * Exécute une étape ne traitant pas de fichier, sauf si elle est déjà terminée.
+     */
+    public void run(String stage, Runnable step) {
+        if (isCompleted(stage)) {
+            System.out.println("Étape " + stage + " déjà terminée : ignorée");
+            return;
+        }
+        step.run();
+        save(stage, 0, true);
+    }
+
+    /**
+     * Traite les lignes d'un fichier CSV (hors en-tête et lignes vides), à partir du dernier point de reprise.
+     *
+     * @param stage  le nom de l'étape.
+     * @param is     le contenu du fichier.
+     * @param action le traitement d'une ligne.
+     */
+    public void process(String stage, InputStream is, Consumer<String> action) {
+        processNumbered(stage, is, (line, lineNumber) -> action.accept(line));
+    }
+
+    /**
+     * Traite les lignes d'un fichier CSV comme {@link #process(String, InputStream, Consumer)}, le traitement recevant
+     * aussi le numéro de la ligne (à partir de 1, hors en-tête et lignes vides) : ce numéro, stable d'une reprise à
+     * l'autre, permet à une étape de reconnaître les lignes qu'elle a déjà appliquées.
+     */
+    public void processNumbered(String stage, InputStream is, ObjLongConsumer<String> action) {
+        if (isCompleted(stage)) {
+            System.out.println("Étape " + stage + " déjà terminée : ignorée");
+            return;
+        }
+
+        long resumeLine = lastLine(stage);
+        if (resumeLine > 0) {
+            System.out.println("Reprise de l'étape " + stage + " après la ligne " + resumeLine);
+        }
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is))) {
+            reader.readLine();
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() == 0) {
+                    continue;
+                }
+                lineNumber++;
+                if (lineNumber <= resumeLine) {
+                    continue;
+                }
+                action.accept(line, lineNumber);
+                if (lineNumber % CHECKPOINT_INTERVAL == 0) {
+                    save(stage, lineNumber, false);
+                }
+            }
+            save(stage, lineNumber, true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return la dernière ligne enregistrée pour l'étape, soit son nombre total de lignes si elle est terminée.
+     */
+    public long lastLine(String stage) {
+        DBObject checkpoint = checkpoints.findOne(new BasicDBObject("_id", stage));
+        return checkpoint == null ? 0 : ((Number) checkpoint.get("line")).longValue();
+    }
+
+    private void save(String stage, long line, boolean completed) {
+        checkpoints.save(new BasicDBObject("_id", stage)
+                .append("line", line)
+                .append("completed", completed)
+                .append("updatedAt", new Date()));
+    }
+}
@@ -3,8 +3,8 @@ package nosql.workshop.batch.mongodb;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
+import nosql.workshop.batch.util.CsvFiles;
 
-import java.io.*;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -15,23 +15,35 @@ import java.util.Date;
  */
 public class InstallationsImporter {
 
+    public static final String STAGE = "installations";
+
     private final DBCollection installationsCollection;
+    private final CoordinatesCorrections coordinatesCorrections;
+    private final ImportCheckpoints checkpoints;
+    private int correctedCount;
+    private long importedCount;
 
-    public InstallationsImporter(DBCollection installationsCollection) {
+    public InstallationsImporter(DBCollection installationsCollection, CoordinatesCorrections coordinatesCorrections, ImportCheckpoints checkpoints) {
         this.installationsCollection = installationsCollection;
+        this.coordinatesCorrections = coordinatesCorrections;
+        this.checkpoints = checkpoints;
     }
 
     public void run() {
-        InputStream is = CsvToMongoDb.class.getResourceAsStream("/csv/installations.csv");
-
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is))) {
-            reader.lines()
-                    .skip(1)
-                    .filter(line -> line.length() > 0)
-                    .forEach(line -> installationsCollection.save(toDbObject(line)));
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
-        }
+        // save remplace le document : rejouer une ligne est sans effet de bord
+        checkpoints.process(STAGE, CsvFiles.open("installations.csv"), line -> {
+            installationsCollection.save(toDbObject(line));
+            importedCount++;
+        });
+
+        System.out.println(correctedCount + " installations importées avec des coordonnées corrigées");
+    }
+
+    /**
+     * @return le nombre d'installations enregistrées par cet import (lignes rejouées après une reprise comprises).
+     */
+    public long getImportedCount() {
+        return importedCount;
     }
 
     private DBObject toDbObject(final String line) {
@@ -54,14 +66,20 @@ public class InstallationsImporter {
 
         BasicDBObject location = new BasicDBObject();
         location.append("type", "Point");
-        String[] split = columns[8].substring(1, columns[8].length() - 1).split(",");
-        Double[] locationDouble = {Double.parseDouble(split[1]), Double.parseDouble(split[0])};
+        Double[] locationDouble = coordinatesCorrections.get(columns[1]);
+        if (locationDouble != null) {
+            correctedCount++;
+        } else {
+            String[] split = columns[8].substring(1, columns[8].length() - 1).split(",");
+            locationDouble = new Double[]{Double.parseDouble(split[1]), Double.parseDouble(split[0])};
+        }
         location.append("coordinates", locationDouble);
         installation.append("location", location);
 
-        installation.append("multiCommune", columns[16].equals("Oui"));
-        installation.append("nbPlacesParking", columns[17]);
-        installation.append("nbPlacesParkingHandicapes", columns[18]);
+        // types BSON natifs : documents plus compacts et requêtes par intervalle indexables
+        installation.append("multiCommune", columns[16].trim().equalsIgnoreCase("Oui"));
+        appendInteger(installation, "nbPlacesParking", columns[17], columns[1]);
+        appendInteger(installation, "nbPlacesParkingHandicapes", columns[18], columns[1]);
         if (columns.length >= 29) {
             DateFormat format = new SimpleDateFormat("yyyy-MM-dd");
             try {
@@ -74,4 +92,19 @@ public class InstallationsImporter {
 
         return installation;
     }
+
+    /**
+     * Ajoute un attribut entier, plutôt que stocké comme texte. Une valeur vide (attribut non renseigné, cas courant)
+     * est omise sans être signalée ; une valeur non numérique est omise et signalée.
+     */
+    private void appendInteger(BasicDBObject installation, String field, String value, String numero) {
+        if (value.trim().isEmpty()) {
+            return;
+        }
+        try {
+            installation.append(field, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            System.out.println("Valeur non numérique (ignorée) pour " + field + " de l'installation " + numero + " : " + value);
+        }
+    }
 }
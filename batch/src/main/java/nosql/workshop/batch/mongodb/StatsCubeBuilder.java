@@ -0,0 +1,143 @@
+package nosql.workshop.batch.mongodb;
+
+import com.mongodb.AggregationOptions;
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.Cursor;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Construit le cube de statistiques pré-agrégées (commune x famille x activité) à partir des installations.
+ * <p>
+ * Chaque document du cube correspond à une combinaison de dimensions ; une dimension agrégée (roll-up)
+ * prend la valeur {@link #ALL}. Les comptes sont des comptes distincts, calculés pour chaque niveau
+ * d'agrégation, afin de ne jamais avoir à sommer des cellules côté application.
+ * <p>
+ * Les comptes distincts sont obtenus par regroupements successifs (couples installation/équipement distincts,
+ * puis installations distinctes, puis cellule) et non par <code>$addToSet</code> : aucun document intermédiaire
+ * ne contient la liste des installations d'une cellule, qui dépasserait la taille maximale d'un document BSON
+ * sur les jeux de données volumineux. Une installation sans équipement est rattachée à la famille et à l'activité
+ * {@link #NONE}, et n'est donc absente d'aucune cellule. Les cellules sont insérées par lots de {@link #INSERT_BATCH_SIZE}.
+ */
+public class StatsCubeBuilder {
+
+    public static final String CUBE_COLLECTION_NAME = "stats_cube";
+    public static final String ALL = "*";
+    /**
+     * Famille ou activité des installations sans équipement et des équipements sans activité
+     * (même valeur que <code>StatsCubeService.NONE</code> côté application).
+     */
+    public static final String NONE = "Aucune";
+    public static final int INSERT_BATCH_SIZE = 1000;
+
+    private static final String[] DIMENSIONS = {"commune", "famille", "activite"};
+
+    private final DBCollection installationsCollection;
+
+    public StatsCubeBuilder(DBCollection installationsCollection) {
+        this.installationsCollection = installationsCollection;
+    }
+
+    public void run() {
+        // construction dans une collection temporaire puis renommage, pour ne jamais exposer un cube partiel
+        DBCollection tmpCollection = installationsCollection.getDB().getCollection(CUBE_COLLECTION_NAME + "_tmp");
+        tmpCollection.drop();
+
+        AggregationOptions options = AggregationOptions.builder()
+                .allowDiskUse(true)
+                .outputMode(AggregationOptions.OutputMode.CURSOR)
+                .build();
+
+        // une agrégation par combinaison de dimensions détaillées (2^3 niveaux)
+        for (int groupingSet = 0; groupingSet < (1 << DIMENSIONS.length); groupingSet++) {
+            Cursor cursor = installationsCollection.aggregate(pipeline(groupingSet), options);
+            List<DBObject> cells = new ArrayList<>(INSERT_BATCH_SIZE);
+            while (cursor.hasNext()) {
+                cells.add(toCubeCell(cursor.next()));
+                if (cells.size() == INSERT_BATCH_SIZE) {
+                    tmpCollection.insert(cells);
+                    cells.clear();
+                }
+            }
+            if (!cells.isEmpty()) {
+                tmpCollection.insert(cells);
+            }
+            cursor.close();
+        }
+
+        tmpCollection.createIndex(new BasicDBObject("commune", 1).append("famille", 1).append("activite", 1));
+        tmpCollection.rename(CUBE_COLLECTION_NAME, true);
+    }
+
+    private List<DBObject> pipeline(int groupingSet) {
+        BasicDBList noActivity = new BasicDBList();
+        noActivity.add(NONE);
+
+        // $unwind ignore les tableaux vides : un équipement fictif (sans numéro) remplace un tableau vide ou absent
+        BasicDBList noEquipement = new BasicDBList();
+        noEquipement.add(new BasicDBObject("famille", NONE));
+        DBObject equipements = new BasicDBObject("$project", new BasicDBObject()
+                .append("adresse", 1)
+                .append("equipements", new BasicDBObject("$cond", Arrays.asList(
+                        new BasicDBObject("$gt", Arrays.asList(
+                                new BasicDBObject("$size", new BasicDBObject("$ifNull", Arrays.asList("$equipements", new BasicDBList()))), 0)),
+                        "$equipements",
+                        new BasicDBObject("$literal", noEquipement)))));
+
+        DBObject unwindEquipements = new BasicDBObject("$unwind", "$equipements");
+        DBObject project = new BasicDBObject("$project", new BasicDBObject()
+                .append("installation", "$_id")
+                .append("equipement", "$equipements.numero")
+                .append("commune", "$adresse.commune")
+                .append("famille", "$equipements.famille")
+                .append("activite", new BasicDBObject("$ifNull",
+                        Arrays.asList("$equipements.activites", new BasicDBObject("$literal", noActivity)))));
+        DBObject unwindActivites = new BasicDBObject("$unwind", "$activite");
+
+        BasicDBObject groupId = new BasicDBObject();
+        for (int i = 0; i < DIMENSIONS.length; i++) {
+            boolean detailed = (groupingSet & (1 << i)) != 0;
+            groupId.append(DIMENSIONS[i], detailed ? "$" + DIMENSIONS[i] : new BasicDBObject("$literal", ALL));
+        }
+        // 1. couples (cellule, installation, équipement) distincts : un équipement à plusieurs activités n'est compté qu'une fois
+        DBObject distinctEquipements = new BasicDBObject("$group", new BasicDBObject("_id", new BasicDBObject()
+                .append("cell", groupId)
+                .append("installation", "$installation")
+                .append("equipement", "$equipement")));
+
+        // 2. installations distinctes de la cellule, avec leur nombre d'équipements (l'équipement fictif ne compte pas)
+        DBObject distinctInstallations = new BasicDBObject("$group", new BasicDBObject("_id", new BasicDBObject()
+                .append("cell", "$_id.cell")
+                .append("installation", "$_id.installation"))
+                .append("equipements", new BasicDBObject("$sum", new BasicDBObject("$cond", Arrays.asList(
+                        new BasicDBObject("$eq", Arrays.asList(new BasicDBObject("$ifNull", Arrays.asList("$_id.equipement", null)), null)), 0, 1)))));
+
+        // 3. cellule : un équipement n'appartient qu'à une installation, les comptes par installation s'additionnent
+        DBObject count = new BasicDBObject("$group", new BasicDBObject("_id", "$_id.cell")
+                .append("installations", new BasicDBObject("$sum", 1))
+                .append("equipements", new BasicDBObject("$sum", "$equipements")));
+
+        return Arrays.asList(equipements, unwindEquipements, project, unwindActivites, distinctEquipements, distinctInstallations, count);
+    }
+
+    private DBObject toCubeCell(DBObject aggregate) {
+        DBObject dimensions = (DBObject) aggregate.get("_id");
+        int installations = ((Number) aggregate.get("installations")).intValue();
+        int equipements = ((Number) aggregate.get("equipements")).intValue();
+
+        BasicDBObject cell = new BasicDBObject();
+        for (String dimension : DIMENSIONS) {
+            Object value = dimensions.get(dimension);
+            cell.append(dimension, value != null ? value : "");
+        }
+        cell.append("installations", installations);
+        cell.append("equipements", equipements);
+        cell.append("averageEquipementsPerInstallation", installations == 0 ? 0d : (double) equipements / installations);
+        return cell;
+    }
+}
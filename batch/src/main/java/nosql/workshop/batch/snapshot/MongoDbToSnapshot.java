@@ -0,0 +1,113 @@
+package nosql.workshop.batch.snapshot;
+
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.MongoClient;
+import nosql.workshop.batch.elasticsearch.util.ElasticSearchBatchUtils;
+import nosql.workshop.batch.util.DurabilityProfile;
+import nosql.workshop.snapshot.SnapshotFormat;
+import org.bson.BasicBSONEncoder;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Exporte les installations MongoDB dans un fichier snapshot binaire (cf. {@link SnapshotFormat}), lu en lecture seule
+ * par l'application.
+ * <p>
+ * Les documents sont écrits au fil de la lecture dans un fichier temporaire ; seul l'index (identifiants, coordonnées
+ * et longueurs) est conservé en mémoire, puis écrit en tête du snapshot avant la copie des documents. L'export échoue
+ * si le snapshot dépasse {@link SnapshotFormat#MAX_SIZE}.
+ * <p>
+ * Usage : <code>MongoDbToSnapshot [fichier] [--profile=fast|safe]</code> (par défaut 'installations.snapshot').
+ * En profil <code>safe</code> (cf. {@link DurabilityProfile}), le fichier est synchronisé sur disque avant son renommage.
+ */
+public class MongoDbToSnapshot {
+
+    public static final String DEFAULT_FILE = "installations.snapshot";
+
+    public static void main(String[] args) throws IOException {
+        DurabilityProfile profile = DurabilityProfile.fromArgs(args);
+        Path target = Paths.get(Arrays.stream(args).filter(arg -> !arg.startsWith("--")).findFirst().orElse(DEFAULT_FILE));
+        long startTime = System.currentTimeMillis();
+
+        List<byte[]> ids = new ArrayList<>();
+        List<double[]> points = new ArrayList<>();
+        List<Integer> lengths = new ArrayList<>();
+        long indexSize = 0;
+        long documentsSize = 0;
+
+        // écriture dans des fichiers temporaires puis renommage : l'application ne voit jamais de fichier partiel
+        Path documents = Paths.get(target.toString() + ".documents.tmp");
+        Path tmp = Paths.get(target.toString() + ".tmp");
+        try {
+            MongoClient mongoClient = new MongoClient();
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(documents))) {
+                DBCursor cursor = ElasticSearchBatchUtils.getMongoCursorToAllInstallations(mongoClient);
+                BasicBSONEncoder encoder = new BasicBSONEncoder();
+                while (cursor.hasNext()) {
+                    DBObject object = cursor.next();
+                    byte[] id = ((String) object.get("_id")).getBytes(StandardCharsets.UTF_8);
+                    byte[] document = encoder.encode(object);
+                    ids.add(id);
+                    points.add(coordinates(object));
+                    lengths.add(document.length);
+                    indexSize += SnapshotFormat.indexEntrySize(id.length);
+                    documentsSize += document.length;
+                    if (SnapshotFormat.HEADER_SIZE + indexSize + documentsSize > SnapshotFormat.MAX_SIZE) {
+                        throw new IllegalStateException("Snapshot larger than " + SnapshotFormat.MAX_SIZE + " bytes");
+                    }
+                    out.write(document);
+                }
+            } finally {
+                mongoClient.close();
+            }
+
+            FileOutputStream file = new FileOutputStream(tmp.toFile());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+                out.writeInt(SnapshotFormat.MAGIC);
+                out.writeInt(SnapshotFormat.FORMAT_VERSION);
+                out.writeLong(startTime);
+                out.writeInt(ids.size());
+
+                long offset = SnapshotFormat.HEADER_SIZE + indexSize;
+                for (int i = 0; i < ids.size(); i++) {
+                    out.writeShort(ids.get(i).length);
+                    out.write(ids.get(i));
+                    out.writeDouble(points.get(i)[0]);
+                    out.writeDouble(points.get(i)[1]);
+                    out.writeLong(offset);
+                    out.writeInt(lengths.get(i));
+                    offset += lengths.get(i);
+                }
+                Files.copy(documents, out);
+                if (profile == DurabilityProfile.SAFE) {
+                    out.flush();
+                    file.getFD().sync();
+                }
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(documents);
+            Files.deleteIfExists(tmp);
+        }
+
+        System.out.println("Exported " + ids.size() + " installations to " + target + " in " + (System.currentTimeMillis() - startTime) + " ms");
+    }
+
+    private static double[] coordinates(DBObject installation) {
+        DBObject location = (DBObject) installation.get("location");
+        if (location != null && location.get("coordinates") instanceof List) {
+            List<?> coordinates = (List<?>) location.get("coordinates");
+            return new double[]{((Number) coordinates.get(0)).doubleValue(), ((Number) coordinates.get(1)).doubleValue()};
+        }
+        return new double[]{Double.NaN, Double.NaN};
+    }
+}
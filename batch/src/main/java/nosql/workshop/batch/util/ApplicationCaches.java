@@ -0,0 +1,39 @@
+package nosql.workshop.batch.util;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Invalidation des caches de l'application après un import.
+ * <p>
+ * Une seule instance est invalidée : si plusieurs instances de l'application sont déployées, les autres conservent
+ * leurs caches jusqu'à leur redémarrage (ou jusqu'à un appel direct à l'URL d'invalidation).
+ */
+public class ApplicationCaches {
+
+    /**
+     * URL de l'application dont les caches doivent être vidés (propriété système <code>app.url</code>).
+     */
+    public static final String APP_URL = System.getProperty("app.url", "http://localhost:8080");
+
+    /**
+     * Demande à l'application de vider un cache.
+     * L'application n'étant pas forcément démarrée, un échec est simplement signalé.
+     *
+     * @param path        le chemin de l'URL d'invalidation (ex : <code>/api/towns/suggest/cache/invalidate</code>).
+     * @param description le cache invalidé, pour les traces.
+     */
+    public static void invalidate(String path, String description) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(APP_URL + path).openConnection();
+            connection.setRequestMethod("POST");
+            connection.setConnectTimeout(2000);
+            connection.setReadTimeout(2000);
+            System.out.println("Invalidation du " + description + " : HTTP " + connection.getResponseCode());
+            connection.disconnect();
+        } catch (IOException e) {
+            System.out.println("Invalidation du " + description + " impossible (application injoignable) : " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package nosql.workshop.batch.util;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+
+/**
+ * Accès aux fichiers CSV importés par les batchs.
+ * <p>
+ * Par défaut, les fichiers embarqués (<code>/csv</code>) sont utilisés. La propriété système <code>csv.dir</code>
+ * permet de lire les fichiers d'un autre répertoire, par exemple un jeu de données produit par
+ * {@link nosql.workshop.batch.generator.ScaleDataGenerator}.
+ */
+public class CsvFiles {
+
+    public static final String CSV_DIR = "csv.dir";
+
+    /**
+     * Ouvre un fichier CSV.
+     *
+     * @param fileName le nom du fichier (ex : <code>installations.csv</code>).
+     * @return le contenu du fichier.
+     */
+    public static InputStream open(String fileName) {
+        String csvDir = System.getProperty(CSV_DIR);
+        if (csvDir == null) {
+            return CsvFiles.class.getResourceAsStream("/csv/" + fileName);
+        }
+        try {
+            return new FileInputStream(Paths.get(csvDir, fileName).toFile());
+        } catch (FileNotFoundException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package nosql.workshop.batch.util;
+
+import com.mongodb.WriteConcern;
+import org.elasticsearch.action.WriteConsistencyLevel;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Profil de durabilité des écritures d'un batch, passé en paramètre sous la forme <code>--profile=fast|safe</code>.
+ * <ul>
+ * <li><code>fast</code> : rechargement complet, reconstructible depuis les CSV. Écritures MongoDB non acquittées,
+ * cohérence Elasticsearch sur une seule copie, sans refresh pendant le chargement ; une unique vérification
+ * est faite en fin de batch.</li>
+ * <li><code>standard</code> (par défaut) : comportement par défaut des clients MongoDB et Elasticsearch.</li>
+ * <li><code>safe</code> : mises à jour incrémentales. Écritures MongoDB acquittées par la majorité du replica set,
+ * cohérence Elasticsearch au quorum, index chargé avec ses répliques et son refresh de recherche.</li>
+ * </ul>
+ */
+public enum DurabilityProfile {
+
+    FAST(WriteConcern.UNACKNOWLEDGED, WriteConsistencyLevel.ONE, false),
+    STANDARD(WriteConcern.ACKNOWLEDGED, WriteConsistencyLevel.DEFAULT, false),
+    SAFE(WriteConcern.MAJORITY, WriteConsistencyLevel.QUORUM, true);
+
+    public static final String PROFILE_OPTION = "--profile=";
+
+    private final WriteConcern writeConcern;
+    private final WriteConsistencyLevel consistencyLevel;
+    private final boolean searchSettingsDuringLoad;
+
+    DurabilityProfile(WriteConcern writeConcern, WriteConsistencyLevel consistencyLevel, boolean searchSettingsDuringLoad) {
+        this.writeConcern = writeConcern;
+        this.consistencyLevel = consistencyLevel;
+        this.searchSettingsDuringLoad = searchSettingsDuringLoad;
+    }
+
+    /**
+     * Lit le profil parmi les arguments d'un batch.
+     *
+     * @param args les arguments du batch.
+     * @return le profil demandé, ou {@link #STANDARD} si aucun n'est indiqué.
+     */
+    public static DurabilityProfile fromArgs(String[] args) {
+        for (String arg : args) {
+            if (arg.startsWith(PROFILE_OPTION)) {
+                String name = arg.substring(PROFILE_OPTION.length());
+                try {
+                    return valueOf(name.toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Profil inconnu : " + name + " (attendu : " + Arrays.toString(values()) + ")", e);
+                }
+            }
+        }
+        return STANDARD;
+    }
+
+    /**
+     * @return le write concern des écritures MongoDB.
+     */
+    public WriteConcern getWriteConcern() {
+        return writeConcern;
+    }
+
+    /**
+     * @return le niveau de cohérence des écritures Elasticsearch.
+     */
+    public WriteConsistencyLevel getConsistencyLevel() {
+        return consistencyLevel;
+    }
+
+    /**
+     * @return <code>true</code> si un index doit être chargé avec ses répliques et son refresh de recherche.
+     */
+    public boolean isSearchSettingsDuringLoad() {
+        return searchSettingsDuringLoad;
+    }
+
+    /**
+     * @return <code>true</code> si les écritures MongoDB ne sont pas acquittées, et doivent donc être vérifiées en fin de batch.
+     */
+    public boolean isUnacknowledged() {
+        return !writeConcern.callGetLastError();
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,41 @@
+package nosql.workshop.snapshot;
+
+/**
+ * Format du snapshot binaire des installations, écrit par le batch <code>MongoDbToSnapshot</code> et lu par l'application.
+ * <p>
+ * Format (big-endian) :
+ * <pre>
+ * int    MAGIC
+ * int    FORMAT_VERSION
+ * long   date de création (ms)
+ * int    nombre d'installations
+ * n x    [short longueur id][id UTF-8][double longitude][double latitude][long offset][int longueur]
+ * n x    document BSON de l'installation (à l'offset indiqué dans l'index)
+ * </pre>
+ */
+public final class SnapshotFormat {
+
+    public static final int MAGIC = 0x4E535331;
+    public static final int FORMAT_VERSION = 1;
+
+    /**
+     * Taille de l'en-tête : MAGIC, FORMAT_VERSION, date de création et nombre d'installations.
+     */
+    public static final int HEADER_SIZE = 4 + 4 + 8 + 4;
+
+    /**
+     * Taille maximale d'un snapshot : le fichier est projeté en mémoire d'un seul tenant, ce que Java limite à 2 Go.
+     */
+    public static final long MAX_SIZE = Integer.MAX_VALUE;
+
+    private SnapshotFormat() {
+    }
+
+    /**
+     * @param idLength la longueur en octets de l'identifiant (UTF-8).
+     * @return la taille de l'entrée d'index d'une installation.
+     */
+    public static int indexEntrySize(int idLength) {
+        return 2 + idLength + 8 + 8 + 8 + 4;
+    }
+}